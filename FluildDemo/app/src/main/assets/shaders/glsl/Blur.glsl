@@ -0,0 +1,3 @@
+precision mediump float;
+uniform sampler2D blurTexture;
+varying vec2 uv1;
@@ -0,0 +1,9 @@
+attribute vec4 position;
+attribute vec2 uv;
+
+varying vec2 uv1;
+
+void main() {
+    gl_Position = position;
+    uv1 = uv;
+}
@@ -0,0 +1,12 @@
+#include "Blur.glsl"
+uniform vec2 halfTexel;
+
+// Dual filter downsample: the center and four diagonal taps, each tap averaging 4 texels.
+void main() {
+    vec4 sum = texture2D(blurTexture, uv1) * 4.0;
+    sum += texture2D(blurTexture, uv1 - halfTexel);
+    sum += texture2D(blurTexture, uv1 + halfTexel);
+    sum += texture2D(blurTexture, uv1 + vec2(halfTexel.x, -halfTexel.y));
+    sum += texture2D(blurTexture, uv1 - vec2(halfTexel.x, -halfTexel.y));
+    gl_FragColor = sum / 8.0;
+}
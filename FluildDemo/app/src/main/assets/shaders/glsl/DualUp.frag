@@ -0,0 +1,15 @@
+#include "Blur.glsl"
+uniform vec2 halfTexel;
+
+// Dual filter upsample: a tent of eight taps around the center.
+void main() {
+    vec4 sum = texture2D(blurTexture, uv1 + vec2(-halfTexel.x * 2.0, 0.0));
+    sum += texture2D(blurTexture, uv1 + vec2(-halfTexel.x, halfTexel.y)) * 2.0;
+    sum += texture2D(blurTexture, uv1 + vec2(0.0, halfTexel.y * 2.0));
+    sum += texture2D(blurTexture, uv1 + vec2(halfTexel.x, halfTexel.y)) * 2.0;
+    sum += texture2D(blurTexture, uv1 + vec2(halfTexel.x * 2.0, 0.0));
+    sum += texture2D(blurTexture, uv1 + vec2(halfTexel.x, -halfTexel.y)) * 2.0;
+    sum += texture2D(blurTexture, uv1 + vec2(0.0, -halfTexel.y * 2.0));
+    sum += texture2D(blurTexture, uv1 + vec2(-halfTexel.x, -halfTexel.y)) * 2.0;
+    gl_FragColor = sum / 12.0;
+}
@@ -0,0 +1,20 @@
+#include "Blur.glsl"
+
+// TAP_COUNT is defined by every variant BlurRender builds: a constant loop the compiler can unroll.
+#define TAPS TAP_COUNT
+
+uniform vec2 blurStep;
+uniform float blurWeights[TAPS];
+uniform float blurOffsets[TAPS];
+
+// Separable Gaussian, one direction per pass. Tap 0 is the center, every other tap is
+// sampled on both sides. With linear sampling each tap sits between two texels and the
+// bilinear filter fetches both with the right weights.
+void main() {
+    vec4 sum = texture2D(blurTexture, uv1) * blurWeights[0];
+    for (int i = 1; i < TAPS; i++) {
+        vec2 offset = blurStep * blurOffsets[i];
+        sum += (texture2D(blurTexture, uv1 + offset) + texture2D(blurTexture, uv1 - offset)) * blurWeights[i];
+    }
+    gl_FragColor = sum;
+}
@@ -1,8 +1,14 @@
 precision lowp float;
 uniform sampler2D texture;
 varying vec4 outColor;
+#ifdef QUAD_SPRITE
+varying vec2 spriteUv;
+#define SPRITE_UV spriteUv
+#else
+#define SPRITE_UV gl_PointCoord
+#endif
 
 void main() {
-    gl_FragColor = texture2D(texture, gl_PointCoord);
+    gl_FragColor = texture2D(texture, SPRITE_UV);
     gl_FragColor *= outColor;
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+attribute vec2 corner;
+attribute vec4 position;
+attribute vec4 color;
+uniform mat4 mvp;
+uniform vec2 spriteSize;
+varying vec4 outColor;
+varying vec2 spriteUv;
+
+// One instance per particle: the corner moves the particle center by half the sprite size.
+void main() {
+    gl_Position = mvp * position;
+    gl_Position.xy += corner * spriteSize * gl_Position.w;
+    spriteUv = corner * 0.5 + 0.5;
+    outColor = color;
+}
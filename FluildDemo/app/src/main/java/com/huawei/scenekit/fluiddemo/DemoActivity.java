@@ -23,8 +23,10 @@ import android.os.Bundle;
 import android.util.Log;
 import android.widget.Button;
 
+import com.huawei.scenekit.fluiddemo.render.ConfigChooser;
+import com.huawei.scenekit.fluiddemo.render.ContextFactory;
 import com.huawei.scenekit.fluiddemo.render.Render;
-import com.huawei.scenekit.fluiddemo.util.Config;
+import com.huawei.scenekit.fluiddemo.util.AssetPreloader;
 import com.huawei.scenekit.fluiddemo.util.SensorManager;
 
 /**
@@ -42,6 +44,9 @@ public class DemoActivity extends Activity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_demo);
 
+        // Does nothing if MainActivity already started it.
+        AssetPreloader.getInstance().start(getAssets());
+
         // Initialize the gravity sensor.
         sensorManager = new SensorManager(this);
 
@@ -57,13 +62,19 @@ public class DemoActivity extends Activity {
         super.onResume();
         sensorManager.onResume();
         mainView.onResume();
+        Render.getInstance().start();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         sensorManager.onPause();
+        if (isFinishing()) {
+            // Queued before pausing: the GL thread runs it while the context is still current.
+            mainView.queueEvent(() -> Render.getInstance().releaseGl());
+        }
         mainView.onPause();
+        Render.getInstance().pause();
     }
 
     // Initialize mainView.
@@ -73,11 +84,13 @@ public class DemoActivity extends Activity {
             Log.e("DemoActivity", "initMainView: mainView is null");
             return;
         }
-        mainView.setEGLContextClientVersion(Config.EGL_CONTEXT_VERSION);
-        mainView.setEGLConfigChooser(8, 8, 8, 8, 16, 0);
+        // An ES 3 renderable config when there is one, the factory then creates an ES 3 context.
+        mainView.setEGLConfigChooser(new ConfigChooser());
+        mainView.setEGLContextFactory(new ContextFactory());
         mainView.setPreserveEGLContextOnPause(true);
         mainView.getHolder().setFormat(PixelFormat.TRANSLUCENT);
         mainView.setRenderer(Render.getInstance());
+        Render.getInstance().attachView(mainView);
 
         // Start rendering.
         Render.getInstance().start();
@@ -90,5 +103,9 @@ public class DemoActivity extends Activity {
         if (del != null) {
             del.setOnClickListener(view -> Render.getInstance().deleteWater());
         }
+        Button background = findViewById(R.id.switchbg);
+        if (background != null) {
+            background.setOnClickListener(view -> Render.getInstance().nextBackground());
+        }
     }
 }
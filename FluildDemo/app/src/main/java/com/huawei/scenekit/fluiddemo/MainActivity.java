@@ -27,6 +27,7 @@ import androidx.annotation.Nullable;
 import com.huawei.hms.scene.common.base.error.exception.ModuleException;
 import com.huawei.hms.scene.common.base.error.exception.StateException;
 import com.huawei.hms.scene.sdk.fluid.SceneKitFluid;
+import com.huawei.scenekit.fluiddemo.util.AssetPreloader;
 
 /**
  * Description: MainActivity
@@ -42,6 +43,9 @@ public class MainActivity extends Activity {
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        // Decode the demo assets while the user is on this screen.
+        AssetPreloader.getInstance().start(getAssets());
     }
 
     /**
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+/**
+ * Description: BlurConfig
+ *
+ * How BlurRender blurs the water surface. GAUSSIAN runs a separable kernel on a surface whose longer
+ * side is Config.BLUR_REFERENCE_SIZE / 2. The horizontal pass reads the full size input one tap per
+ * blur texel (getPointWeights); the vertical pass reads the blur surface itself, where with linear
+ * sampling each tap is placed between two texels, so the bilinear filter reads both and a kernel of
+ * radius r costs 1 + ceil(r / 2) fetches instead of 1 + r (getWeights).
+ * DUAL_FILTER halves the size levels times and upsamples back with small fixed kernels, which
+ * gives a wide blur for a few fetches per pixel. Levels are counted at Config.BLUR_REFERENCE_SIZE,
+ * BlurRender adds one per doubling of the surface.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class BlurConfig {
+    /**
+     * Separable Gaussian blur.
+     */
+    public static final int GAUSSIAN = 0;
+
+    /**
+     * Downsample / upsample pyramid.
+     */
+    public static final int DUAL_FILTER = 1;
+
+    /**
+     * Max taps per side including the center, must match GaussianBlur.frag.
+     */
+    public static final int MAX_TAPS = 8;
+
+    /**
+     * Max pyramid levels at the reference size.
+     */
+    public static final int MAX_LEVELS = 4;
+
+    /**
+     * Cheapest tier: one dual filter level.
+     */
+    public static final BlurConfig LOW = new BlurConfig(DUAL_FILTER, 0, 0, false, 1);
+
+    /**
+     * Two dual filter levels, wider than LOW.
+     */
+    public static final BlurConfig MEDIUM = new BlurConfig(DUAL_FILTER, 0, 0, false, 2);
+
+    /**
+     * The original 5 tap Gaussian, sigma 2.3: 5 point taps horizontally, 3 linear taps vertically.
+     */
+    public static final BlurConfig HIGH = new BlurConfig(GAUSSIAN, 2, 2.3f, true, 1);
+
+    private static final BlurConfig[] TIERS = {LOW, MEDIUM, HIGH};
+
+    private final int mode;
+    private final int levels;
+    private final float[] weights = new float[MAX_TAPS];
+    private final float[] offsets = new float[MAX_TAPS];
+    private final float[] pointWeights = new float[MAX_TAPS];
+    private final float[] pointOffsets = new float[MAX_TAPS];
+    private int tapCount = 1;
+    private int pointTapCount = 1;
+
+    /**
+     * Constructor
+     *
+     * @param mode GAUSSIAN or DUAL_FILTER
+     * @param radius Gaussian kernel radius in texels
+     * @param sigma Gaussian standard deviation in texels
+     * @param isLinearSampling whether to merge Gaussian taps in pairs
+     * @param levels dual filter pyramid levels
+     */
+    public BlurConfig(int mode, int radius, float sigma, boolean isLinearSampling, int levels) {
+        this.mode = mode;
+        this.levels = Math.max(1, Math.min(levels, MAX_LEVELS));
+        if (mode == GAUSSIAN) {
+            computeKernel(radius, sigma, isLinearSampling);
+        } else {
+            weights[0] = 1.f;
+            pointWeights[0] = 1.f;
+        }
+    }
+
+    /**
+     * get config for a quality tier
+     *
+     * @param tier 0 for the lowest quality, getTierCount() - 1 for the highest
+     * @return blur config
+     */
+    public static BlurConfig getTier(int tier) {
+        return TIERS[Math.max(0, Math.min(tier, TIERS.length - 1))];
+    }
+
+    public static int getTierCount() {
+        return TIERS.length;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Obtains the tap weights, index 0 is the center.
+     *
+     * @return weights, tapCount of them are used
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Obtains the tap offsets in texels, index 0 is the center.
+     *
+     * @return offsets, tapCount of them are used
+     */
+    public float[] getOffsets() {
+        return offsets;
+    }
+
+    public int getTapCount() {
+        return tapCount;
+    }
+
+    /**
+     * Obtains the weights of the same kernel with one tap per texel, for a pass whose taps do not
+     * fall on the texels of the sampled texture.
+     *
+     * @return weights, getPointTapCount() of them are used
+     */
+    public float[] getPointWeights() {
+        return pointWeights;
+    }
+
+    /**
+     * Obtains the offsets of the one tap per texel kernel, in texels.
+     *
+     * @return offsets, getPointTapCount() of them are used
+     */
+    public float[] getPointOffsets() {
+        return pointOffsets;
+    }
+
+    public int getPointTapCount() {
+        return pointTapCount;
+    }
+
+    private void computeKernel(int radius, float sigma, boolean isLinearSampling) {
+        int maxRadius = isLinearSampling ? 2 * (MAX_TAPS - 1) : MAX_TAPS - 1;
+        int kernelRadius = Math.max(0, Math.min(radius, maxRadius));
+        float[] discrete = new float[kernelRadius + 1];
+        float sum = 0;
+        for (int i = 0; i <= kernelRadius; i++) {
+            discrete[i] = sigma > 0 ? (float) Math.exp(-i * i / (2 * sigma * sigma)) : (i == 0 ? 1 : 0);
+            sum += i == 0 ? discrete[i] : 2 * discrete[i];
+        }
+        for (int i = 0; i <= kernelRadius; i++) {
+            discrete[i] /= sum;
+        }
+
+        // Kernels too wide for one tap per texel keep their linear taps.
+        boolean hasPointKernel = kernelRadius < MAX_TAPS;
+        pointTapCount = hasPointKernel ? kernelRadius + 1 : 0;
+        for (int i = 0; i < pointTapCount; i++) {
+            pointWeights[i] = discrete[i];
+            pointOffsets[i] = i;
+        }
+
+        weights[0] = discrete[0];
+        offsets[0] = 0;
+        if (!isLinearSampling) {
+            for (int i = 1; i <= kernelRadius; i++) {
+                weights[i] = discrete[i];
+                offsets[i] = i;
+            }
+            tapCount = kernelRadius + 1;
+            return;
+        }
+        // Texels 2k - 1 and 2k share tap k, at their weighted mean offset.
+        tapCount = 1;
+        for (int i = 1; i <= kernelRadius; i += 2) {
+            float first = discrete[i];
+            float second = i + 1 <= kernelRadius ? discrete[i + 1] : 0;
+            float weight = first + second;
+            weights[tapCount] = weight;
+            offsets[tapCount] = weight > 0 ? (i * first + (i + 1) * second) / weight : i;
+            tapCount++;
+        }
+        if (!hasPointKernel) {
+            System.arraycopy(weights, 0, pointWeights, 0, tapCount);
+            System.arraycopy(offsets, 0, pointOffsets, 0, tapCount);
+            pointTapCount = tapCount;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import android.util.Log;
 
 import com.huawei.scenekit.fluiddemo.shader.Material;
 import com.huawei.scenekit.fluiddemo.shader.Texture;
+import com.huawei.scenekit.fluiddemo.shader.VertexBuffer;
 import com.huawei.scenekit.fluiddemo.shader.Program;
 import com.huawei.scenekit.fluiddemo.shader.ProgramUtil;
 import com.huawei.scenekit.fluiddemo.util.Config;
@@ -28,21 +29,82 @@ import com.huawei.scenekit.fluiddemo.util.Config;
 /**
  * Description: BlurRender
  *
+ * Blurs a texture into a surface as described by a BlurConfig, which can be changed at any time.
+ * Intermediate surfaces are sized from the output surface and created on first use, so are the
+ * passes: a Gaussian program variant is compiled per tap count the first time a config uses it.
+ *
  * @author HUAWEI
  * @since 2021-06-29
  */
 public class BlurRender {
     private static final String TAG = "BlurRender";
-    private static final String BLUR_TEXTURE_NAME = "texture";
-    private static final int FB_SIZE = 128;
+    private static final String BLUR_TEXTURE_NAME = "blurTexture";
+    // Levels the dual filter may add on surfaces larger than Config.BLUR_REFERENCE_SIZE.
+    private static final int MAX_EXTRA_LEVELS = 3;
+
+    private static class Pass {
+        Material material;
+        int position;
+        int uv;
+        int texture;
+
+        Pass(ProgramUtil.Shader shader, String... defines) {
+            material = new Material(new Program(shader, defines));
+            material.addAttribute("position", 3, ProgramUtil.FLOAT, 4, false);
+            material.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
+            position = material.getAttributeHandle("position");
+            uv = material.getAttributeHandle("uv");
+            texture = material.getUniformHandle(BLUR_TEXTURE_NAME);
+        }
+    }
+
+    // The tap count is compiled in, only the weights and offsets are uniforms.
+    private static class GaussianPass extends Pass {
+        int step;
+        int weights;
+        int offsets;
+
+        GaussianPass(int tapCount) {
+            super(ProgramUtil.Shader.GAUSSIAN_BLUR, ProgramUtil.define(ProgramUtil.DEFINE_TAP_COUNT, tapCount));
+            step = material.getUniformHandle("blurStep");
+            weights = material.getUniformHandle("blurWeights");
+            offsets = material.getUniformHandle("blurOffsets");
+        }
+    }
+
+    // Level i is the output size divided by 2^(i + 1).
+    private final Surface[] levels = new Surface[BlurConfig.MAX_LEVELS + MAX_EXTRA_LEVELS];
+    // Gaussian intermediate, Config.BLUR_REFERENCE_SIZE / 2 on the longer side.
+    private Surface gaussianSurface;
+    private final float[] texelVector = new float[2];
+    private volatile BlurConfig config = BlurConfig.getTier(Config.DEFAULT_BLUR_TIER);
 
-    private Surface blurSurface;
-    private Material hBlurMaterial;
-    private Material vBlurMaterial;
+    private VertexBuffer quadBuffer;
+    // Indexed by tap count.
+    private final GaussianPass[] gaussianPasses = new GaussianPass[BlurConfig.MAX_TAPS + 1];
+    private Pass downPass;
+    private Pass upPass;
+    private int downHalfTexelHandle;
+    private int upHalfTexelHandle;
 
     public BlurRender() {
     }
 
+    /**
+     * Select the blur, applied from the next draw.
+     *
+     * @param blurConfig the blur config
+     */
+    public void setConfig(BlurConfig blurConfig) {
+        if (blurConfig != null) {
+            config = blurConfig;
+        }
+    }
+
+    public BlurConfig getConfig() {
+        return config;
+    }
+
     /**
      * draw particles
      *
@@ -50,46 +112,194 @@ public class BlurRender {
      * @param outputSurface output surface
      */
     public void draw(Texture inputTexture, Surface outputSurface) {
-        if (blurSurface == null || hBlurMaterial == null || vBlurMaterial == null) {
+        if (quadBuffer == null) {
             Log.e(TAG, "draw: null pointer exception");
             return;
         }
-        blurSurface.beginRender(0);
-        hBlurMaterial.startRender();
+        BlurConfig current = config;
+        if (current.getMode() == BlurConfig.GAUSSIAN) {
+            drawGaussian(current, inputTexture, outputSurface);
+        } else {
+            drawDualFilter(current, inputTexture, outputSurface);
+        }
+    }
 
-        Config.QUAD_VERTEX_BUFFER.rewind();
+    /**
+     * create material
+     *
+     * @param quad full screen quad in the Config.QUAD_VERTEX layout
+     */
+    public void createMaterial(VertexBuffer quad) {
+        quadBuffer = quad;
 
-        hBlurMaterial.setVertexBuffer("position", Config.QUAD_VERTEX_BUFFER, 0, Config.QUAD_VERTEX_STRIDE);
-        hBlurMaterial.setVertexBuffer("uv", Config.QUAD_VERTEX_BUFFER, 3, Config.QUAD_VERTEX_STRIDE);
-        hBlurMaterial.updateUniformTexture(BLUR_TEXTURE_NAME, 0, inputTexture.getTextureId());
-        hBlurMaterial.updateUniform("blurBufferSize", 1.0f / FB_SIZE);;
-        hBlurMaterial.draw(Material.DrawType.TRIANGLE_FAN, 0, 4);
-        hBlurMaterial.endRender();
-        blurSurface.endRender();
+        // Passes and surfaces of a previous context are gone with it.
+        for (int i = 0; i < gaussianPasses.length; i++) {
+            gaussianPasses[i] = null;
+        }
+        downPass = null;
+        upPass = null;
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = null;
+        }
+        gaussianSurface = null;
+    }
 
-        GLES20.glFlush();
-        outputSurface.beginRender(0);
-        vBlurMaterial.startRender();
-        vBlurMaterial.setVertexBuffer("position", Config.QUAD_VERTEX_BUFFER, 0, Config.QUAD_VERTEX_STRIDE);
-        vBlurMaterial.setVertexBuffer("uv", Config.QUAD_VERTEX_BUFFER, 3, Config.QUAD_VERTEX_STRIDE);
-        vBlurMaterial.updateUniformTexture(BLUR_TEXTURE_NAME, 0, blurSurface.getTexture().getTextureId());
-        vBlurMaterial.updateUniform("blurBufferSize", 1.0f / FB_SIZE);
-        vBlurMaterial.draw(Material.DrawType.TRIANGLE_FAN, 0, 4);
-        vBlurMaterial.endRender();
-        outputSurface.endRender();
+    /**
+     * Delete the passes and intermediate surfaces, must be called on the GL thread.
+     */
+    public void release() {
+        for (int i = 0; i < gaussianPasses.length; i++) {
+            if (gaussianPasses[i] != null) {
+                gaussianPasses[i].material.release();
+                gaussianPasses[i] = null;
+            }
+        }
+        if (downPass != null) {
+            downPass.material.release();
+            upPass.material.release();
+            downPass = null;
+            upPass = null;
+        }
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] != null) {
+                levels[i].release();
+                levels[i] = null;
+            }
+        }
+        if (gaussianSurface != null) {
+            gaussianSurface.release();
+            gaussianSurface = null;
+        }
+    }
+
+    // Horizontal pass into the blur surface, vertical pass back into the output. The blur surface has the
+    // size the kernels were tuned for, so the blur covers the same share of the screen at any resolution.
+    private void drawGaussian(BlurConfig current, Texture inputTexture, Surface outputSurface) {
+        Surface blurSurface = getGaussianSurface(outputSurface);
+        // Taps one blur texel apart fall between the texels of the larger input, use one tap per texel.
+        texelVector[0] = 1.f / blurSurface.getWidth();
+        texelVector[1] = 0;
+        drawGaussianPass(current.getPointWeights(), current.getPointOffsets(), current.getPointTapCount(),
+            inputTexture, blurSurface);
+
+        // Steps of one texel of the sampled blur surface, where the linear taps are exact.
+        texelVector[0] = 0;
+        texelVector[1] = 1.f / blurSurface.getHeight();
+        drawGaussianPass(current.getWeights(), current.getOffsets(), current.getTapCount(), blurSurface.getTexture(),
+            outputSurface);
+        blurSurface.invalidate();
+    }
+
+    private void drawGaussianPass(float[] weights, float[] offsets, int tapCount, Texture source, Surface target) {
+        if (gaussianPasses[tapCount] == null) {
+            gaussianPasses[tapCount] = new GaussianPass(tapCount);
+        }
+        GaussianPass pass = gaussianPasses[tapCount];
+        Material material = beginPass(pass, source, target);
+        material.updateUniform(pass.step, texelVector);
+        material.updateUniformArray(pass.weights, weights, tapCount);
+        material.updateUniformArray(pass.offsets, offsets, tapCount);
+        endPass(material, target);
+    }
+
+    // Down through the levels, then up again, the last upsample writes the output.
+    private void drawDualFilter(BlurConfig current, Texture inputTexture, Surface outputSurface) {
+        if (downPass == null) {
+            downPass = new Pass(ProgramUtil.Shader.DUAL_DOWN);
+            downHalfTexelHandle = downPass.material.getUniformHandle("halfTexel");
+            upPass = new Pass(ProgramUtil.Shader.DUAL_UP);
+            upHalfTexelHandle = upPass.material.getUniformHandle("halfTexel");
+        }
+        Texture source = inputTexture;
+        int levelCount = getLevelCount(current, outputSurface);
+        for (int i = 0; i < levelCount; i++) {
+            Surface target = getLevel(i, outputSurface);
+            setHalfTexel(target);
+            Material material = beginPass(downPass, source, target);
+            material.updateUniform(downHalfTexelHandle, texelVector);
+            endPass(material, target);
+            source = target.getTexture();
+        }
+        for (int i = levelCount - 1; i >= 0; i--) {
+            Surface target = i > 0 ? levels[i - 1] : outputSurface;
+            setHalfTexel(levels[i]);
+            Material material = beginPass(upPass, source, target);
+            material.updateUniform(upHalfTexelHandle, texelVector);
+            endPass(material, target);
+            source = target.getTexture();
+        }
+        for (int i = 0; i < levelCount; i++) {
+            levels[i].invalidate();
+        }
+    }
+
+    // Half a texel of the smaller of the two surfaces of a dual filter pass, where the filter samples
+    // between texels.
+    private void setHalfTexel(Surface level) {
+        texelVector[0] = 0.5f / level.getWidth();
+        texelVector[1] = 0.5f / level.getHeight();
+    }
+
+    // The levels were tuned on Config.BLUR_REFERENCE_SIZE surfaces and every level doubles the blur
+    // radius: one level more per doubling of the surface keeps the blur on the same share of the screen.
+    private static int getLevelCount(BlurConfig current, Surface outputSurface) {
+        return getLevelCount(current.getLevels(), Math.max(outputSurface.getWidth(), outputSurface.getHeight()));
     }
 
     /**
-     * create material
+     * Dual filter levels for a surface.
+     *
+     * @param referenceLevels levels at Config.BLUR_REFERENCE_SIZE
+     * @param longerSide longer side of the output surface
+     * @return levels to draw, at least one
      */
-    public void createMaterial() {
-        hBlurMaterial = new Material(new Program(ProgramUtil.Shader.HBLUR));
-        vBlurMaterial = new Material(new Program(ProgramUtil.Shader.VBLUR));
-        hBlurMaterial.addAttribute("position", 3, ProgramUtil.FLOAT, 4, false);
-        hBlurMaterial.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
-        vBlurMaterial.addAttribute("position", 3, ProgramUtil.FLOAT, 4, false);
-        vBlurMaterial.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
-
-        blurSurface = new Surface(FB_SIZE, FB_SIZE);
+    static int getLevelCount(int referenceLevels, int longerSide) {
+        int extra = Math.round((float) (Math.log((double) longerSide / Config.BLUR_REFERENCE_SIZE) / Math.log(2)));
+        return Math.max(1, referenceLevels + Math.min(extra, MAX_EXTRA_LEVELS));
+    }
+
+    private Material beginPass(Pass pass, Texture source, Surface target) {
+        // Every pixel is overwritten, the clear only spares tile based GPUs loading the old content.
+        target.beginRender(GLES20.GL_COLOR_BUFFER_BIT);
+        Material material = pass.material;
+        material.startRender();
+        material.setVertexBuffer(pass.position, quadBuffer, 0, Config.QUAD_VERTEX_STRIDE);
+        material.setVertexBuffer(pass.uv, quadBuffer, Config.QUAD_UV_OFFSET, Config.QUAD_VERTEX_STRIDE);
+        material.updateUniformTexture(pass.texture, 0, source.getTextureId());
+        return material;
+    }
+
+    private void endPass(Material material, Surface target) {
+        material.draw(Material.DrawType.TRIANGLE_FAN, 0, 4);
+        material.endRender();
+        target.endRender();
+    }
+
+    private Surface getGaussianSurface(Surface outputSurface) {
+        int longer = Math.max(outputSurface.getWidth(), outputSurface.getHeight());
+        float scale = Config.BLUR_REFERENCE_SIZE / 2.f / longer;
+        int width = Math.max(1, Math.round(outputSurface.getWidth() * scale));
+        int height = Math.max(1, Math.round(outputSurface.getHeight() * scale));
+        if (gaussianSurface == null || gaussianSurface.getWidth() != width || gaussianSurface.getHeight() != height) {
+            if (gaussianSurface != null) {
+                gaussianSurface.release();
+            }
+            gaussianSurface = new Surface(width, height);
+        }
+        return gaussianSurface;
+    }
+
+    private Surface getLevel(int level, Surface outputSurface) {
+        int width = Math.max(1, outputSurface.getWidth() >> (level + 1));
+        int height = Math.max(1, outputSurface.getHeight() >> (level + 1));
+        Surface surface = levels[level];
+        if (surface == null || surface.getWidth() != width || surface.getHeight() != height) {
+            if (surface != null) {
+                surface.release();
+            }
+            surface = new Surface(width, height);
+            levels[level] = surface;
+        }
+        return surface;
     }
 }
@@ -20,30 +20,51 @@ import android.content.Context;
 
 import com.huawei.scenekit.fluiddemo.shader.Material;
 import com.huawei.scenekit.fluiddemo.shader.Texture;
+import com.huawei.scenekit.fluiddemo.shader.TextureCache;
+import com.huawei.scenekit.fluiddemo.shader.VertexBuffer;
 import com.huawei.scenekit.fluiddemo.shader.Program;
 import com.huawei.scenekit.fluiddemo.shader.ProgramUtil;
+import com.huawei.scenekit.fluiddemo.util.AssetPreloader;
 import com.huawei.scenekit.fluiddemo.util.Config;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.Arrays;
 
 /**
  * Description: CanvasRender
  *
+ * Draws the background, one of Config.CANVAS_TEXTURE_NAMES. A switch only happens once the
+ * new background is cached or decoded by the AssetPreloader, until then the current one stays,
+ * and the background after it is decoded ahead of time.
+ *
  * @author HUAWEI
  * @since 2021-06-29
  */
 public class CanvasRender {
     private Material canvasMaterial;
-    private float[] uvTransform = new float[16];
+    private final float[] uvTransform = new float[16];
+    private final ByteBuffer positionBytes;
     private final FloatBuffer positionBuffer;
     private final FloatBuffer coordBuffer;
+    private VertexBuffer positionVertexBuffer;
+    private VertexBuffer coordVertexBuffer;
+    private boolean isVolumeDirty = true;
     private Texture canvasTexture;
+    private TextureCache textureCache;
+    private Context context;
+    private int currentBackground = 0;
+    private volatile int requestedBackground = 0;
+    private int positionHandle;
+    private int uvHandle;
+    private int textureHandle;
+    private int mvpHandle;
+    private int uvTransformHandle;
+    private int alphaFactorHandle;
 
     public CanvasRender() {
-        positionBuffer = ByteBuffer.allocateDirect(8 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        positionBytes = ByteBuffer.allocateDirect(8 * 4).order(ByteOrder.nativeOrder());
+        positionBuffer = positionBytes.asFloatBuffer();
 
         float[] data = new float[] {
                 0, 0, 1, 0, 0, 1, 1, 1
@@ -58,35 +79,108 @@ public class CanvasRender {
      * @param context the context
      */
     public void onSurfaceCreated(Context context) {
-        canvasTexture = new Texture(context, Config.DEFAULT_TEXTURE_NAME);
+        this.context = context;
+        // Textures of the previous context are gone.
+        textureCache = new TextureCache(Config.CANVAS_TEXTURE_BUDGET);
+        currentBackground = requestedBackground;
+        String name = Config.CANVAS_TEXTURE_NAMES[currentBackground];
+        canvasTexture = new Texture(context, name);
+        textureCache.put(name, canvasTexture);
+        preloadNext(currentBackground);
+
+        positionVertexBuffer = new VertexBuffer(8 * 4);
+        coordVertexBuffer = VertexBuffer.createStatic(coordBuffer, 8 * 4);
+        isVolumeDirty = true;
 
         canvasMaterial = new Material(new Program(ProgramUtil.Shader.TEXTURE));
         canvasMaterial.addAttribute("position", 2, ProgramUtil.FLOAT, 4, false);
         canvasMaterial.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
         canvasMaterial.setBlendFactor(ProgramUtil.BLEND_ONE, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
-        canvasMaterial.addSamplerTexture("texture", canvasTexture);
+
+        positionHandle = canvasMaterial.getAttributeHandle("position");
+        uvHandle = canvasMaterial.getAttributeHandle("uv");
+        textureHandle = canvasMaterial.getUniformHandle("texture");
+        mvpHandle = canvasMaterial.getUniformHandle("mvp");
+        uvTransformHandle = canvasMaterial.getUniformHandle("uvTransform");
+        alphaFactorHandle = canvasMaterial.getUniformHandle("alphaFactor");
+    }
+
+    /**
+     * Delete the cached backgrounds and buffers, must be called on the GL thread.
+     */
+    public void release() {
+        if (canvasMaterial == null) {
+            return;
+        }
+        textureCache.clear();
+        canvasTexture = null;
+        positionVertexBuffer.release();
+        coordVertexBuffer.release();
+        canvasMaterial.release();
+        canvasMaterial = null;
     }
 
     /**
      * draw particles
      */
     public void draw() {
+        updateBackground();
         setVolume(-1, -1, 1, 1);
-        uvTransform = Arrays.copyOf(Config.MATRIX4, uvTransform.length);
+        System.arraycopy(Config.MATRIX4, 0, uvTransform, 0, uvTransform.length);
 
-        coordBuffer.rewind();
-        positionBuffer.rewind();
+        if (isVolumeDirty) {
+            positionVertexBuffer.replace(positionBytes, 8 * 4);
+            isVolumeDirty = false;
+        }
         canvasMaterial.startRender();
-        canvasMaterial.setVertexBuffer("position", positionBuffer, 0, 0);
-        canvasMaterial.setVertexBuffer("uv", coordBuffer, 0, 0);
-        canvasMaterial.updateUniformTexture("texture", 0, canvasTexture.getTextureId());
-        canvasMaterial.updateUniform("mvp", Config.MATRIX4);
-        canvasMaterial.updateUniform("uvTransform", uvTransform);
-        canvasMaterial.updateUniform("alphaFactor", 1.0f);
+        canvasMaterial.setVertexBuffer(positionHandle, positionVertexBuffer, 0, 0);
+        canvasMaterial.setVertexBuffer(uvHandle, coordVertexBuffer, 0, 0);
+        canvasMaterial.updateUniformTexture(textureHandle, 0, canvasTexture.getTextureId());
+        canvasMaterial.updateUniform(mvpHandle, Config.MATRIX4);
+        canvasMaterial.updateUniform(uvTransformHandle, uvTransform);
+        canvasMaterial.updateUniform(alphaFactorHandle, 1.0f);
         canvasMaterial.draw(Material.DrawType.TRIANGLE_STRIP, 0, 4);
         canvasMaterial.endRender();
     }
 
+    /**
+     * Switch to the next background, applied once it is decoded.
+     */
+    public void nextBackground() {
+        requestedBackground = (requestedBackground + 1) % Config.CANVAS_TEXTURE_NAMES.length;
+    }
+
+    // Switch without stalling: a background that is neither cached nor decoded is queued instead.
+    private void updateBackground() {
+        int requested = requestedBackground;
+        if (requested == currentBackground) {
+            return;
+        }
+        String name = Config.CANVAS_TEXTURE_NAMES[requested];
+        Texture texture = textureCache.get(name);
+        if (texture == null) {
+            AssetPreloader preloader = AssetPreloader.getInstance();
+            if (!preloader.isTextureReady(name)) {
+                preloader.preloadTexture(context.getAssets(), name);
+                return;
+            }
+            // Make room for the incoming background first, sizes differ between backgrounds.
+            textureCache.reserve(Texture.getByteSize(context, name));
+            texture = new Texture(context, name);
+            textureCache.put(name, texture);
+        }
+        canvasTexture = texture;
+        currentBackground = requested;
+        preloadNext(requested);
+    }
+
+    private void preloadNext(int background) {
+        String next = Config.CANVAS_TEXTURE_NAMES[(background + 1) % Config.CANVAS_TEXTURE_NAMES.length];
+        if (!textureCache.contains(next)) {
+            AssetPreloader.getInstance().preloadTexture(context.getAssets(), next);
+        }
+    }
+
     /**
      * set Volume
      *
@@ -96,10 +190,12 @@ public class CanvasRender {
      * @param top the top
      */
     public void setVolume(float left, float bottom, float right, float top) {
-        float[] data = new float[] {
-                left, bottom, right, bottom, left, top, right, top
-        };
+        if (positionBuffer.get(0) == left && positionBuffer.get(1) == bottom && positionBuffer.get(2) == right
+            && positionBuffer.get(5) == top && !isVolumeDirty) {
+            return;
+        }
         positionBuffer.position(0);
-        positionBuffer.put(data);
+        positionBuffer.put(left).put(bottom).put(right).put(bottom).put(left).put(top).put(right).put(top);
+        isVolumeDirty = true;
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Description: ConfigChooser
+ *
+ * Chooses an RGBA8888 config with a 16 bit depth buffer that is renderable with OpenGL ES 3, so the
+ * ContextFactory request for an ES 3 context is valid, and an ES 2 renderable one on devices without.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ConfigChooser implements GLSurfaceView.EGLConfigChooser {
+    private static final String TAG = "ConfigChooser";
+    private static final int EGL_RENDERABLE_TYPE = 0x3040;
+    private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+    private static final int COLOR_SIZE = 8;
+    private static final int DEPTH_SIZE = 16;
+    private static final int STENCIL_SIZE = 0;
+
+    @Override
+    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+        EGLConfig config = chooseConfig(egl, display, EGL_OPENGL_ES3_BIT_KHR);
+        if (config == null) {
+            Log.w(TAG, "chooseConfig: no OpenGL ES 3 config, falling back to OpenGL ES 2");
+            config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT);
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("No config chosen");
+        }
+        return config;
+    }
+
+    // First config with exactly 8 bits per channel, eglChooseConfig also returns deeper ones.
+    private static EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, int renderableType) {
+        int[] attributes = {EGL10.EGL_RED_SIZE, COLOR_SIZE, EGL10.EGL_GREEN_SIZE, COLOR_SIZE,
+            EGL10.EGL_BLUE_SIZE, COLOR_SIZE, EGL10.EGL_ALPHA_SIZE, COLOR_SIZE, EGL10.EGL_DEPTH_SIZE, DEPTH_SIZE,
+            EGL10.EGL_STENCIL_SIZE, STENCIL_SIZE, EGL_RENDERABLE_TYPE, renderableType, EGL10.EGL_NONE};
+        int[] count = new int[1];
+        if (!egl.eglChooseConfig(display, attributes, null, 0, count) || count[0] <= 0) {
+            return null;
+        }
+        EGLConfig[] configs = new EGLConfig[count[0]];
+        if (!egl.eglChooseConfig(display, attributes, configs, configs.length, count)) {
+            return null;
+        }
+        int[] value = new int[1];
+        for (int i = 0; i < count[0]; i++) {
+            if (getAttribute(egl, display, configs[i], EGL10.EGL_RED_SIZE, value) == COLOR_SIZE
+                && getAttribute(egl, display, configs[i], EGL10.EGL_GREEN_SIZE, value) == COLOR_SIZE
+                && getAttribute(egl, display, configs[i], EGL10.EGL_BLUE_SIZE, value) == COLOR_SIZE
+                && getAttribute(egl, display, configs[i], EGL10.EGL_ALPHA_SIZE, value) == COLOR_SIZE) {
+                return configs[i];
+            }
+        }
+        return null;
+    }
+
+    private static int getAttribute(EGL10 egl, EGLDisplay display, EGLConfig config, int attribute, int[] value) {
+        return egl.eglGetConfigAttrib(display, config, attribute, value) ? value[0] : 0;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import com.huawei.scenekit.fluiddemo.util.Config;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Description: ContextFactory
+ *
+ * Creates an OpenGL ES Config.EGL_CONTEXT_VERSION context, falling back to
+ * Config.EGL_FALLBACK_CONTEXT_VERSION on devices that do not support it.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ContextFactory implements GLSurfaceView.EGLContextFactory {
+    private static final String TAG = "ContextFactory";
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
+        EGLContext context = createContext(egl, display, eglConfig, Config.EGL_CONTEXT_VERSION);
+        if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+            Log.w(TAG, "createContext: OpenGL ES " + Config.EGL_CONTEXT_VERSION + " unavailable, error "
+                + egl.eglGetError() + ", falling back to " + Config.EGL_FALLBACK_CONTEXT_VERSION);
+            context = createContext(egl, display, eglConfig, Config.EGL_FALLBACK_CONTEXT_VERSION);
+        }
+        return context;
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+        if (!egl.eglDestroyContext(display, context)) {
+            Log.e(TAG, "destroyContext: error " + egl.eglGetError());
+        }
+    }
+
+    private static EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig, int version) {
+        int[] attributes = {EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE};
+        return egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attributes);
+    }
+}
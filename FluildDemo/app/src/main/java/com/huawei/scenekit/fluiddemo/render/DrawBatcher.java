@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.shader.Material;
+import com.huawei.scenekit.fluiddemo.util.Config;
+
+/**
+ * Description: DrawBatcher
+ *
+ * Collects particle ranges for one pass and merges ranges that touch in the particle buffer
+ * and share the same group flags, so one draw call covers many groups.
+ * Group lists come in creation order or in reverse, so a range merges when it directly follows
+ * or directly precedes the last batch.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class DrawBatcher {
+    /**
+     * Draws one merged particle range.
+     */
+    public interface RangeDrawer {
+        /**
+         * draw a particle range
+         *
+         * @param offset index of the first particle
+         * @param count particle count
+         */
+        void drawRange(int offset, int count);
+    }
+
+    private final int[] offsets = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] counts = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] flags = new int[Config.MAX_NODE_GROUP_COUNT];
+    private int batchCount = 0;
+    private int rangeCount = 0;
+    private int savedCalls = 0;
+
+    /**
+     * Start collecting ranges for a new pass.
+     */
+    public void begin() {
+        batchCount = 0;
+        rangeCount = 0;
+    }
+
+    /**
+     * add a particle range
+     *
+     * @param offset index of the first particle
+     * @param count particle count
+     * @param groupFlags flags of the group, only ranges with equal flags are merged
+     */
+    public void add(int offset, int count, int groupFlags) {
+        if (count <= 0) {
+            return;
+        }
+        rangeCount++;
+        if (batchCount > 0) {
+            int last = batchCount - 1;
+            if (flags[last] == groupFlags && offsets[last] + counts[last] == offset) {
+                counts[last] += count;
+                return;
+            }
+            if (flags[last] == groupFlags && offset + count == offsets[last]) {
+                offsets[last] = offset;
+                counts[last] += count;
+                return;
+            }
+        }
+        if (batchCount == offsets.length) {
+            // Never hit while there are at most MAX_NODE_GROUP_COUNT groups.
+            return;
+        }
+        offsets[batchCount] = offset;
+        counts[batchCount] = count;
+        flags[batchCount] = groupFlags;
+        batchCount++;
+    }
+
+    public boolean isEmpty() {
+        return batchCount == 0;
+    }
+
+    /**
+     * Draw the batches as points with the material already bound.
+     *
+     * @param material the material
+     */
+    public void draw(Material material) {
+        for (int i = 0; i < batchCount; i++) {
+            material.draw(Material.DrawType.POINT, offsets[i], counts[i]);
+        }
+        savedCalls += rangeCount - batchCount;
+    }
+
+    /**
+     * Draw the batches through a drawer, for passes that do not draw plain points.
+     *
+     * @param drawer the drawer
+     */
+    public void draw(RangeDrawer drawer) {
+        for (int i = 0; i < batchCount; i++) {
+            drawer.drawRange(offsets[i], counts[i]);
+        }
+        savedCalls += rangeCount - batchCount;
+    }
+
+    /**
+     * Close the frame statistics, call once per frame.
+     *
+     * @return draw calls saved by merging during the frame
+     */
+    public int endFrame() {
+        int saved = savedCalls;
+        savedCalls = 0;
+        return saved;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.shader.Material;
+import com.huawei.scenekit.fluiddemo.shader.Program;
+import com.huawei.scenekit.fluiddemo.shader.ProgramUtil;
+import com.huawei.scenekit.fluiddemo.shader.Texture;
+import com.huawei.scenekit.fluiddemo.shader.VertexBuffer;
+import com.huawei.scenekit.fluiddemo.util.ParticleSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: InstancedParticlePass
+ *
+ * Draws particles as camera facing quads, one instance per particle, instead of point sprites.
+ * The quad corners come from a static buffer while position and color advance per instance.
+ * OpenGL ES 3.0 has no base instance, so each batch moves the instance pointers to its first particle.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class InstancedParticlePass implements DrawBatcher.RangeDrawer {
+    private static final float[] CORNERS = {
+        -1.0f, -1.0f,
+        1.0f, -1.0f,
+        -1.0f, 1.0f,
+        1.0f, 1.0f
+    };
+
+    private static final int CORNER_STRIDE = 2 * 4;
+
+    private final Material material;
+    private final VertexBuffer cornerBuffer;
+    private final int cornerHandle;
+    private final int positionHandle;
+    private final int colorHandle;
+    private final int mvpHandle;
+    private final int spriteSizeHandle;
+    private ParticleUploader uploader;
+
+    /**
+     * Create the pass, must be called on the GL thread.
+     *
+     * @param spriteTexture particle sprite texture
+     * @param isPacked whether positions use the packed vertex format
+     */
+    public InstancedParticlePass(Texture spriteTexture, boolean isPacked) {
+        FloatBuffer corners = ByteBuffer.allocateDirect(CORNERS.length * 4).order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+        corners.put(CORNERS);
+        cornerBuffer = VertexBuffer.createStatic(corners, CORNERS.length * 4);
+
+        material = new Material(new Program(ProgramUtil.Shader.NODE_QUAD));
+        material.addAttribute("corner", 2, ProgramUtil.FLOAT, 4, false);
+        if (isPacked) {
+            material.addAttribute("position", 2, ProgramUtil.UNSIGNED_SHORT, 2, true);
+        } else {
+            material.addAttribute("position", 2, ProgramUtil.FLOAT, 4, false);
+        }
+        material.addAttribute("color", 4, ProgramUtil.UNSIGNED_BYTE, 1, true);
+        material.setBlendFactor(ProgramUtil.BLEND_ONE, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
+        material.addSamplerTexture("texture", spriteTexture);
+
+        cornerHandle = material.getAttributeHandle("corner");
+        positionHandle = material.getAttributeHandle("position");
+        colorHandle = material.getAttributeHandle("color");
+        mvpHandle = material.getUniformHandle("mvp");
+        spriteSizeHandle = material.getUniformHandle("spriteSize");
+        material.setAttributeDivisor(positionHandle, 1);
+        material.setAttributeDivisor(colorHandle, 1);
+    }
+
+    /**
+     * Delete the GL objects of the pass, the sprite texture belongs to the caller.
+     */
+    public void release() {
+        material.release();
+        cornerBuffer.release();
+    }
+
+    /**
+     * Draw the batches into the bound surface.
+     *
+     * @param batcher particle ranges to draw
+     * @param particles uploaded particle streams
+     * @param mvp transform from the uploaded positions to clip space
+     * @param spriteSize half size of a sprite in clip space, x and y
+     */
+    public void draw(DrawBatcher batcher, ParticleUploader particles, float[] mvp, float[] spriteSize) {
+        uploader = particles;
+        material.startRender();
+        material.setVertexBuffer(cornerHandle, cornerBuffer, 0, CORNER_STRIDE);
+        material.updateUniform(mvpHandle, mvp);
+        material.updateUniform(spriteSizeHandle, spriteSize);
+        batcher.draw(this);
+        material.endRender();
+    }
+
+    @Override
+    public void drawRange(int offset, int count) {
+        int stride = uploader.getPositionStride();
+        material.setVertexBuffer(positionHandle, uploader.getStreamBuffer(),
+            uploader.getPositionOffset() + offset * stride, stride);
+        material.setVertexBuffer(colorHandle, uploader.getColorVertexBuffer(), offset * ParticleSnapshot.COLOR_STRIDE,
+            ParticleSnapshot.COLOR_STRIDE);
+        material.drawInstanced(Material.DrawType.TRIANGLE_STRIP, 0, CORNERS.length / 2, count);
+    }
+}
@@ -20,17 +20,17 @@ import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
-
-import com.huawei.hms.scene.sdk.fluid.ParticleGroup;
-import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
+import com.huawei.scenekit.fluiddemo.shader.GlCapabilities;
+import com.huawei.scenekit.fluiddemo.shader.GlState;
 import com.huawei.scenekit.fluiddemo.shader.Texture;
 import com.huawei.scenekit.fluiddemo.shader.Material;
 import com.huawei.scenekit.fluiddemo.shader.Program;
 import com.huawei.scenekit.fluiddemo.shader.ProgramUtil;
+import com.huawei.scenekit.fluiddemo.shader.VertexBuffer;
 import com.huawei.scenekit.fluiddemo.util.Config;
+import com.huawei.scenekit.fluiddemo.util.ParticlePacker;
+import com.huawei.scenekit.fluiddemo.util.ParticleSnapshot;
+import com.huawei.scenekit.fluiddemo.util.SimulationThread;
 
 /**
  * Description: NodeRender
@@ -39,9 +39,7 @@ import com.huawei.scenekit.fluiddemo.util.Config;
  * @since 2021-06-29
  */
 public class NodeRender {
-    private ByteBuffer colorBuffer;
-    private ByteBuffer positionBuffer;
-    private ByteBuffer weightBuffer;
+    private final ParticleUploader uploader = new ParticleUploader(Config.PACKED_PARTICLE_FORMAT);
 
     // Render a blur.
     private BlurRender blurRender;
@@ -51,23 +49,56 @@ public class NodeRender {
     private Material waterScreenMaterial;
     private Material otherScreenMaterial;
 
+    // Shared by every particle pass.
+    private Texture spriteTexture;
+
+    // Instanced quad passes, null when particles are drawn as point sprites.
+    private InstancedParticlePass waterQuadPass;
+    private InstancedParticlePass otherQuadPass;
+    private boolean useQuads = Config.INSTANCED_PARTICLES;
+
+    // Handles resolved once in createMaterial.
+    private int waterPositionHandle;
+    private int waterColorHandle;
+    private int waterWeightHandle;
+    private int waterPointSizeHandle;
+    private int waterMvpHandle;
+    private int screenPositionHandle;
+    private int screenUvHandle;
+    private int screenTextureHandle;
+    private int screenMvpHandle;
+    private int screenAlphaHandle;
+    private int otherPositionHandle;
+    private int otherColorHandle;
+    private int otherPointSizeHandle;
+    private int otherMvpHandle;
+    private int otherScreenPositionHandle;
+    private int otherScreenUvHandle;
+    private int otherScreenTextureHandle;
+    private int otherScreenMvpHandle;
+    private int otherScreenAlphaHandle;
+
     private final float[] textureTransform = new float[16];
     private final float[] worldTransform = new float[16];
+    // Maps packed [0, 1] positions to clip space.
+    private final float[] packedWorldTransform = new float[16];
+    // Half size of a particle sprite in clip space, derived from worldTransform.
+    private final float[] spriteSize = new float[2];
 
     private final Surface[] renderSurface = new Surface[2];
-    private ArrayList<ParticleGroup> noneWaterGroup = new ArrayList<>(Config.MAX_NODE_GROUP_COUNT);
+    // Full screen quad, see Config.QUAD_VERTEX.
+    private VertexBuffer quadBuffer;
+
+    private final DrawBatcher waterBatcher = new DrawBatcher();
+    private final DrawBatcher otherBatcher = new DrawBatcher();
 
     private int screenWidth = (int)Config.DEFAULT_WORLD_HEIGHT;
     private int screenHeight = (int)Config.DEFAULT_WORLD_HEIGHT;
 
-    public NodeRender() {
-        int positionSize = 2 * 4 * Config.MAX_NODE_COUNT;
-        int colorSize = 4 * Config.MAX_NODE_COUNT;
-        int weightSize = 4 * Config.MAX_NODE_COUNT;
-        positionBuffer = ByteBuffer.allocateDirect(positionSize).order(ByteOrder.nativeOrder());
-        colorBuffer = ByteBuffer.allocateDirect(colorSize).order(ByteOrder.nativeOrder());
-        weightBuffer = ByteBuffer.allocateDirect(weightSize).order(ByteOrder.nativeOrder());
+    // Offscreen surfaces are the screen size times this scale, resized at the start of a frame.
+    private volatile float resolutionScale = Config.OFFSCREEN_SCALE;
 
+    public NodeRender() {
         blurRender = new BlurRender();
     }
 
@@ -82,24 +113,20 @@ public class NodeRender {
         screenHeight = height;
 
         int offset = 0;
-        // portrait
-        if (height > width) {
-            float ratio = (float) width / height;
-            Matrix.setIdentityM(textureTransform, offset);
-            Matrix.scaleM(textureTransform, offset, 1 / ratio, 1, 1);
-
-            Matrix.setIdentityM(worldTransform, offset);
-            Matrix.translateM(worldTransform, offset, -ratio, -1, 0);
-            Matrix.scaleM(worldTransform, offset, 2 * ratio / Config.WORLD_WIDTH, 2.f / Config.WORLD_HEIGHT, 1);
-        } else {
-            float ratio = (float) height / width;
-            Matrix.setIdentityM(textureTransform, offset);
-            Matrix.scaleM(textureTransform, offset, 1, 1 / ratio, 1);
-
-            Matrix.setIdentityM(worldTransform, offset);
-            Matrix.translateM(worldTransform, offset, -1, -ratio, 0);
-            Matrix.scaleM(worldTransform, offset, 2f / Config.WORLD_WIDTH, 2 * ratio / Config.WORLD_HEIGHT, 1);
-        }
+        // The surfaces have the screen aspect ratio and the world fills them, see Render.changeViewSize.
+        Matrix.setIdentityM(textureTransform, offset);
+        Matrix.setIdentityM(worldTransform, offset);
+        Matrix.translateM(worldTransform, offset, -1, -1, 0);
+        Matrix.scaleM(worldTransform, offset, 2.f / Config.WORLD_WIDTH, 2.f / Config.WORLD_HEIGHT, 1);
+        // Packed positions are normalized over the padded world range, see ParticlePacker.
+        System.arraycopy(worldTransform, 0, packedWorldTransform, 0, worldTransform.length);
+        Matrix.translateM(packedWorldTransform, offset, ParticlePacker.getPositionOrigin(Config.WORLD_WIDTH),
+            ParticlePacker.getPositionOrigin(Config.WORLD_HEIGHT), 0);
+        Matrix.scaleM(packedWorldTransform, offset, ParticlePacker.getPositionRange(Config.WORLD_WIDTH),
+            ParticlePacker.getPositionRange(Config.WORLD_HEIGHT), 1);
+        // Column major: elements 0 and 5 hold the world to clip scale of x and y.
+        spriteSize[0] = Config.NODE_RADIUS * Config.PARTICLE_SPRITE_SCALE * worldTransform[0];
+        spriteSize[1] = Config.NODE_RADIUS * Config.PARTICLE_SPRITE_SCALE * worldTransform[5];
     }
 
     /**
@@ -108,8 +135,13 @@ public class NodeRender {
      * @param context the context
      */
     public void onSurfaceCreated(Context context) {
-        // Create a rendering plane.
-        createSurface();
+        // The rendering planes are created on the first frame, once the screen size is known.
+        renderSurface[0] = null;
+        renderSurface[1] = null;
+
+        // GPU buffers the particle attributes are streamed into.
+        uploader.onSurfaceCreated();
+        quadBuffer = VertexBuffer.createStatic(Config.QUAD_VERTEX_BUFFER, Config.QUAD_VERTEX.length * 4);
 
         // Create a rendering material.
         createMaterial(context);
@@ -119,132 +151,337 @@ public class NodeRender {
      * draw particles
      */
     public void draw() {
-        positionBuffer.rewind();
-        colorBuffer.rewind();
-        weightBuffer.rewind();
-        noneWaterGroup.clear();
+        // Never blocks on the simulation: the snapshot stays valid until the next acquire.
+        ParticleSnapshot snapshot = Render.getInstance().getSnapshots().acquire();
+        uploader.upload(snapshot, getInterpolation(snapshot));
+        uploader.stream();
+        batchGroups(snapshot);
+        ensureSurfaces();
+
+        GLES20.glClearColor(0, 0, 0, 0);
+        // Draw water particles.
+        drawWaterNodes();
 
-        Render.getInstance().getManager().acquire();
-        ParticleSystem system = Render.getInstance().getManager().getParticleSystem();
-        try {
-            int worldParticleCount = system.getParticleCount();
+        // Draw rigid, elastic and powder particles, reusing the uploaded particle data.
+        drawOtherNodes();
 
-            byte[] positionByte = new byte[positionBuffer.capacity()];
-            byte[] colorByte = new byte[colorBuffer.capacity()];
-            byte[] weightByte = new byte[weightBuffer.capacity()];
-            system.copyPositionBuffer(worldParticleCount, positionByte);
-            system.copyColorBuffer(worldParticleCount, colorByte);
-            system.copyWeightBuffer(worldParticleCount, weightByte);
-            positionBuffer.put(positionByte);
-            colorBuffer.put(colorByte);
-            weightBuffer.put(weightByte);
+        GlState.bindFramebuffer(0);
+        GLES20.glViewport(0, 0, screenWidth, screenHeight);
 
-            GLES20.glClearColor(0, 0, 0, 0);
-            // Draw water particles.
-            drawWaterNodes();
+        // Draw non-water particles on the screen.
+        drawOtherNodesScreen();
 
-            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
-            GLES20.glViewport(0, 0, screenWidth, screenHeight);
+        // Draw water particles on the screen.
+        drawWaterNodesScreen();
 
-            // Draw water particles on the screen.
-            drawWaterNodesScreen();
-        } finally {
-            Render.getInstance().getManager().release();
+        // Both surfaces are drawn from scratch next frame.
+        renderSurface[0].invalidate();
+        if (!otherBatcher.isEmpty()) {
+            renderSurface[1].invalidate();
         }
     }
 
-    // Create a rendering plane.
-    private void createSurface() {
-        renderSurface[0] = new Surface(Config.FB_SIZE, Config.FB_SIZE);
-        renderSurface[0].setClearColor(Config.CLEAR_COLOR);
+    /**
+     * Select the water blur, applied from the next frame.
+     *
+     * @param blurConfig the blur config
+     */
+    public void setBlurConfig(BlurConfig blurConfig) {
+        blurRender.setConfig(blurConfig);
+    }
+
+    /**
+     * Set the offscreen resolution as a fraction of the screen size, applied from the next frame.
+     *
+     * @param scale the scale, clamped to Config.MIN_OFFSCREEN_SCALE and Config.MAX_OFFSCREEN_SCALE
+     */
+    public void setResolutionScale(float scale) {
+        resolutionScale = Math.max(Config.MIN_OFFSCREEN_SCALE, Math.min(scale, Config.MAX_OFFSCREEN_SCALE));
+    }
 
-        renderSurface[1] = new Surface(Config.FB_SIZE, Config.FB_SIZE);
-        renderSurface[1].setClearColor(Config.CLEAR_COLOR);
+    /**
+     * Whether particles can be drawn as instanced quads in this context.
+     *
+     * @return true if the quad passes exist
+     */
+    public boolean hasQuadPath() {
+        return waterQuadPass != null;
+    }
+
+    /**
+     * Draw particles as instanced quads or as point sprites, must be called on the GL thread.
+     *
+     * @param isQuads true for instanced quads, ignored when hasQuadPath is false
+     */
+    public void setQuadPath(boolean isQuads) {
+        useQuads = isQuads;
+    }
+
+    /**
+     * Delete every GL object of the particle passes, must be called on the GL thread.
+     */
+    public void release() {
+        if (waterNodeMaterial == null) {
+            // The surface was never created.
+            return;
+        }
+        blurRender.release();
+        if (waterQuadPass != null) {
+            waterQuadPass.release();
+            otherQuadPass.release();
+            waterQuadPass = null;
+            otherQuadPass = null;
+        }
+        waterNodeMaterial.release();
+        otherNodeMaterial.release();
+        waterScreenMaterial.release();
+        otherScreenMaterial.release();
+        spriteTexture.release();
+        quadBuffer.release();
+        uploader.release();
+        for (int i = 0; i < renderSurface.length; i++) {
+            if (renderSurface[i] != null) {
+                renderSurface[i].release();
+                renderSurface[i] = null;
+            }
+        }
+        waterNodeMaterial = null;
+    }
+
+    /**
+     * Close the frame statistics, call once per frame.
+     *
+     * @return draw calls saved by merging particle groups during the frame
+     */
+    public int endFrame() {
+        return waterBatcher.endFrame() + otherBatcher.endFrame();
+    }
+
+    // Split the groups between the passes, merging adjacent ranges into batches.
+    private void batchGroups(ParticleSnapshot snapshot) {
+        waterBatcher.begin();
+        otherBatcher.begin();
+        for (int i = 0; i < snapshot.getGroupCount(); i++) {
+            int flags = snapshot.getGroupFlags(i);
+            DrawBatcher batcher = flags == 1 ? waterBatcher : otherBatcher; // 1 GROUP_DYNAMIC
+            batcher.add(snapshot.getGroupOffset(i), snapshot.getGroupParticleCount(i), flags);
+        }
+    }
+
+    // Blend factor between the previous and the current step for the time being displayed.
+    private float getInterpolation(ParticleSnapshot snapshot) {
+        float alpha = (float) (System.nanoTime() - snapshot.getStepTime()) / SimulationThread.STEP_NANOS;
+        return Math.max(0.f, Math.min(alpha, 1.f));
+    }
+
+    // Create the rendering planes, or recreate them when the screen size or the scale changed.
+    private void ensureSurfaces() {
+        float scale = resolutionScale;
+        int width = Math.max(1, Math.round(screenWidth * scale));
+        int height = Math.max(1, Math.round(screenHeight * scale));
+        for (int i = 0; i < renderSurface.length; i++) {
+            Surface surface = renderSurface[i];
+            if (surface != null && surface.getWidth() == width && surface.getHeight() == height) {
+                continue;
+            }
+            if (surface != null) {
+                surface.release();
+            }
+            renderSurface[i] = new Surface(width, height);
+            renderSurface[i].setClearColor(Config.CLEAR_COLOR);
+        }
     }
 
     // Create a rendering material.
     private void createMaterial(Context context) {
+        // One sprite texture shared by every particle pass, decoded once.
+        spriteTexture = new Texture(context, Config.BLUR_TEXTURE_NAME);
+
         // Set material attributes of water particles.
         waterNodeMaterial = new Material(new Program(ProgramUtil.Shader.WATER_NODE));
-        waterNodeMaterial.addAttribute("position", 2, ProgramUtil.FLOAT, 4, false);
+        addPositionAttribute(waterNodeMaterial);
         waterNodeMaterial.addAttribute("color", 4, ProgramUtil.UNSIGNED_BYTE, 1, true);
-        waterNodeMaterial.addAttribute("weight", 1, ProgramUtil.FLOAT, 1, false);
+        addWeightAttribute(waterNodeMaterial);
         waterNodeMaterial.setBlendFactor(ProgramUtil.BLEND_ONE, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
-        waterNodeMaterial.addSamplerTexture("texture", new Texture(context, Config.BLUR_TEXTURE_NAME));
+        waterNodeMaterial.addSamplerTexture("texture", spriteTexture);
 
         // Set material attributes of non-water particles.
         otherNodeMaterial = new Material(new Program(ProgramUtil.Shader.NODE));
-        otherNodeMaterial.addAttribute("position", 2, ProgramUtil.FLOAT, 4, false);
+        addPositionAttribute(otherNodeMaterial);
         otherNodeMaterial.addAttribute("color", 4, ProgramUtil.UNSIGNED_BYTE, 1, true);
         otherNodeMaterial.setBlendFactor(ProgramUtil.BLEND_ONE, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
-        otherNodeMaterial.addSamplerTexture("texture", new Texture(context, Config.BLUR_TEXTURE_NAME));
+        otherNodeMaterial.addSamplerTexture("texture", spriteTexture);
 
         waterScreenMaterial = new Material(new Program(ProgramUtil.Shader.SCREEN));
         waterScreenMaterial.addAttribute("position", 3, ProgramUtil.FLOAT, 4, false);
         waterScreenMaterial.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
-        waterScreenMaterial.addSamplerTexture("texture", renderSurface[0].getTexture());
         waterScreenMaterial.setBlendFactor(ProgramUtil.BLEND_SRC_ALPHA, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
 
         otherScreenMaterial = new Material(new Program(ProgramUtil.Shader.SCREEN));
         otherScreenMaterial.addAttribute("position", 3, ProgramUtil.FLOAT, 4, false);
         otherScreenMaterial.addAttribute("uv", 2, ProgramUtil.FLOAT, 4, false);
-        otherScreenMaterial.addSamplerTexture("texture", renderSurface[1].getTexture());
         otherScreenMaterial.setBlendFactor(ProgramUtil.BLEND_SRC_ALPHA, ProgramUtil.BLEND_ONE_MINUS_SRC_ALPHA);
 
+        waterPositionHandle = waterNodeMaterial.getAttributeHandle("position");
+        waterColorHandle = waterNodeMaterial.getAttributeHandle("color");
+        waterWeightHandle = waterNodeMaterial.getAttributeHandle("weight");
+        waterPointSizeHandle = waterNodeMaterial.getUniformHandle("pointSize");
+        waterMvpHandle = waterNodeMaterial.getUniformHandle("mvp");
+        screenPositionHandle = waterScreenMaterial.getAttributeHandle("position");
+        screenUvHandle = waterScreenMaterial.getAttributeHandle("uv");
+        screenTextureHandle = waterScreenMaterial.getUniformHandle("texture");
+        screenMvpHandle = waterScreenMaterial.getUniformHandle("mvp");
+        screenAlphaHandle = waterScreenMaterial.getUniformHandle("alphaThreshold");
+        otherPositionHandle = otherNodeMaterial.getAttributeHandle("position");
+        otherColorHandle = otherNodeMaterial.getAttributeHandle("color");
+        otherPointSizeHandle = otherNodeMaterial.getUniformHandle("pointSize");
+        otherMvpHandle = otherNodeMaterial.getUniformHandle("mvp");
+        otherScreenPositionHandle = otherScreenMaterial.getAttributeHandle("position");
+        otherScreenUvHandle = otherScreenMaterial.getAttributeHandle("uv");
+        otherScreenTextureHandle = otherScreenMaterial.getUniformHandle("texture");
+        otherScreenMvpHandle = otherScreenMaterial.getUniformHandle("mvp");
+        otherScreenAlphaHandle = otherScreenMaterial.getUniformHandle("alphaThreshold");
+
+        if ((Config.INSTANCED_PARTICLES || Config.BENCHMARK_PARTICLE_PATHS) && GlCapabilities.isEs3()) {
+            waterQuadPass = new InstancedParticlePass(spriteTexture, uploader.isPacked());
+            otherQuadPass = new InstancedParticlePass(spriteTexture, uploader.isPacked());
+        }
+
         // Create a material for blur rendering.
-        blurRender.createMaterial();
+        blurRender.createMaterial(quadBuffer);
+
+        // Only fetch the particle streams the particle programs read.
+        int streams = getStreams(waterNodeMaterial) | getStreams(otherNodeMaterial);
+        uploader.setStreams(streams);
+        Render.getInstance().setParticleStreams(streams);
+    }
+
+    private static int getStreams(Material material) {
+        int streams = ParticleSnapshot.STREAM_POSITION;
+        if (material.usesAttribute("color")) {
+            streams |= ParticleSnapshot.STREAM_COLOR;
+        }
+        if (material.usesAttribute("weight")) {
+            streams |= ParticleSnapshot.STREAM_WEIGHT;
+        }
+        return streams;
+    }
+
+    private void addWeightAttribute(Material material) {
+        if (!material.usesAttribute("weight")) {
+            return;
+        }
+        if (uploader.isPacked()) {
+            material.addAttribute("weight", 1, ProgramUtil.UNSIGNED_SHORT, 2, true);
+        } else {
+            material.addAttribute("weight", 1, ProgramUtil.FLOAT, 4, false);
+        }
+    }
+
+    // Packed positions are normalized shorts, the world scale is folded into the mvp matrix.
+    private void addPositionAttribute(Material material) {
+        if (uploader.isPacked()) {
+            material.addAttribute("position", 2, ProgramUtil.UNSIGNED_SHORT, 2, true);
+        } else {
+            material.addAttribute("position", 2, ProgramUtil.FLOAT, 4, false);
+        }
+    }
+
+    // Point sprite diameter in pixels of a surface, matching the instanced quad size.
+    private float getPointSize(Surface surface) {
+        return spriteSize[1] * surface.getHeight();
     }
 
     private void drawWaterNodes() {
         renderSurface[0].beginRender(GLES20.GL_COLOR_BUFFER_BIT);
-        waterNodeMaterial.startRender();
-        waterNodeMaterial.setVertexBuffer("position", positionBuffer, 0, 0);
-        waterNodeMaterial.setVertexBuffer("color", colorBuffer, 0, 0);
-
-        waterNodeMaterial.updateUniform("pointSize", 10.f);
-        waterNodeMaterial.updateUniform("mvp", worldTransform);
-
-        Render.getInstance().getManager().acquire();
-        ParticleSystem system = Render.getInstance().getManager().getParticleSystem();
-        try {
-            for (ParticleGroup group : system.getParticleGroupList()) {
-                // Draw a water particle group only.
-                if (group.getGroupFlags() == 1) { // 1 GROUP_DYNAMIC
-                    drawNodeGroup(group);
-                } else {
-                    noneWaterGroup.add(group);
-                }
-            }
-        } finally {
-            Render.getInstance().getManager().release();
+        if (useQuads && waterQuadPass != null) {
+            waterQuadPass.draw(waterBatcher, uploader, uploader.isPacked() ? packedWorldTransform : worldTransform,
+                spriteSize);
+        } else {
+            drawWaterPoints();
         }
+        renderSurface[0].endRender();
+
+        blurRender.draw(renderSurface[0].getTexture(), renderSurface[0]);
+    }
+
+    private void drawWaterPoints() {
+        waterNodeMaterial.startRender();
+        int stride = uploader.getStride();
+        VertexBuffer streamBuffer = uploader.getStreamBuffer();
+        waterNodeMaterial.setVertexBuffer(waterPositionHandle, streamBuffer, uploader.getPositionOffset(), stride);
+        waterNodeMaterial.setVertexBuffer(waterColorHandle, uploader.getColorVertexBuffer(), 0, 0);
+        waterNodeMaterial.setVertexBuffer(waterWeightHandle, streamBuffer, uploader.getWeightOffset(), stride);
+
+        waterNodeMaterial.updateUniform(waterPointSizeHandle, getPointSize(renderSurface[0]));
+        waterNodeMaterial.updateUniform(waterMvpHandle, uploader.isPacked() ? packedWorldTransform : worldTransform);
+
+        // Draw water particle groups only.
+        waterBatcher.draw(waterNodeMaterial);
 
         waterNodeMaterial.endRender();
+    }
 
-        renderSurface[0].endRender();
+    // All non-water groups are drawn in one material pass, scenes with only water skip it.
+    private void drawOtherNodes() {
+        if (otherBatcher.isEmpty()) {
+            return;
+        }
+        renderSurface[1].beginRender(GLES20.GL_COLOR_BUFFER_BIT);
+        if (useQuads && otherQuadPass != null) {
+            otherQuadPass.draw(otherBatcher, uploader, uploader.isPacked() ? packedWorldTransform : worldTransform,
+                spriteSize);
+        } else {
+            drawOtherPoints();
+        }
+        renderSurface[1].endRender();
+    }
 
-        blurRender.draw(renderSurface[0].getTexture(), renderSurface[0]);
+    private void drawOtherPoints() {
+        otherNodeMaterial.startRender();
+        otherNodeMaterial.setVertexBuffer(otherPositionHandle, uploader.getStreamBuffer(),
+            uploader.getPositionOffset(), uploader.getStride());
+        otherNodeMaterial.setVertexBuffer(otherColorHandle, uploader.getColorVertexBuffer(), 0, 0);
+
+        otherNodeMaterial.updateUniform(otherPointSizeHandle, getPointSize(renderSurface[1]));
+        otherNodeMaterial.updateUniform(otherMvpHandle, uploader.isPacked() ? packedWorldTransform : worldTransform);
+
+        otherBatcher.draw(otherNodeMaterial);
+
+        otherNodeMaterial.endRender();
+    }
+
+    private void drawOtherNodesScreen() {
+        if (otherBatcher.isEmpty()) {
+            return;
+        }
+        otherScreenMaterial.startRender();
+        otherScreenMaterial.setVertexBuffer(otherScreenPositionHandle, quadBuffer, 0, Config.QUAD_VERTEX_STRIDE);
+        otherScreenMaterial.setVertexBuffer(otherScreenUvHandle, quadBuffer, Config.QUAD_UV_OFFSET,
+            Config.QUAD_VERTEX_STRIDE);
+
+        otherScreenMaterial.updateUniformTexture(otherScreenTextureHandle, 0,
+            renderSurface[1].getTexture().getTextureId());
+        otherScreenMaterial.updateUniform(otherScreenMvpHandle, textureTransform);
+        otherScreenMaterial.updateUniform(otherScreenAlphaHandle, Config.OTHER_ALPHA);
+        otherScreenMaterial.draw(Material.DrawType.TRIANGLE_FAN, 0, 4);
+        otherScreenMaterial.endRender();
     }
 
     /**
      * draw Water Particles
      */
     public void drawWaterNodesScreen() {
-        Config.QUAD_VERTEX_BUFFER.rewind();
-
         waterScreenMaterial.startRender();
-        waterScreenMaterial.setVertexBuffer("position", Config.QUAD_VERTEX_BUFFER, 0, Config.QUAD_VERTEX_STRIDE);
-        waterScreenMaterial.setVertexBuffer("uv", Config.QUAD_VERTEX_BUFFER, 3, Config.QUAD_VERTEX_STRIDE);
-
-        waterScreenMaterial.updateUniform("mvp", textureTransform);
-        waterScreenMaterial.updateUniform("alphaThreshold", Config.WATER_ALPHA);
+        waterScreenMaterial.setVertexBuffer(screenPositionHandle, quadBuffer, 0, Config.QUAD_VERTEX_STRIDE);
+        waterScreenMaterial.setVertexBuffer(screenUvHandle, quadBuffer, Config.QUAD_UV_OFFSET,
+            Config.QUAD_VERTEX_STRIDE);
+
+        waterScreenMaterial.updateUniformTexture(screenTextureHandle, 0,
+            renderSurface[0].getTexture().getTextureId());
+        waterScreenMaterial.updateUniform(screenMvpHandle, textureTransform);
+        waterScreenMaterial.updateUniform(screenAlphaHandle, Config.WATER_ALPHA);
         waterScreenMaterial.draw(Material.DrawType.TRIANGLE_FAN, 0, 4);
         waterScreenMaterial.endRender();
     }
-
-    private void drawNodeGroup(ParticleGroup group) {
-        int nodeCount = group.getParticleCount();
-        int instanceOffset = group.getParticleBufferIndex();
-        waterNodeMaterial.draw(Material.DrawType.POINT, instanceOffset, nodeCount);
-    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import android.util.Log;
+
+/**
+ * Description: ParticlePathBenchmark
+ *
+ * Alternates point sprites and instanced quads in phases of PHASE_FRAMES frames and logs the mean CPU
+ * and GPU time of a frame on each path. The first frames of a phase are skipped, GPU timings arrive a
+ * few frames late and would still belong to the other path.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ParticlePathBenchmark {
+    private static final String TAG = "ParticlePathBenchmark";
+    private static final int PHASE_FRAMES = 120;
+    private static final int SETTLE_FRAMES = 8;
+    private static final int POINTS = 0;
+    private static final int QUADS = 1;
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    private final long[] cpuSum = new long[2];
+    private final long[] gpuSum = new long[2];
+    private final int[] frames = new int[2];
+    private final int[] gpuFrames = new int[2];
+    private int path = POINTS;
+    private int phaseFrame = 0;
+
+    /**
+     * Account for a frame drawn on the current path.
+     *
+     * @param cpuNanos CPU time of the frame
+     * @param gpuNanos GPU time of the frame, negative if unknown
+     */
+    public void onFrame(long cpuNanos, long gpuNanos) {
+        if (phaseFrame >= SETTLE_FRAMES) {
+            cpuSum[path] += cpuNanos;
+            frames[path]++;
+            if (gpuNanos >= 0) {
+                gpuSum[path] += gpuNanos;
+                gpuFrames[path]++;
+            }
+        }
+        if (++phaseFrame < PHASE_FRAMES) {
+            return;
+        }
+        phaseFrame = 0;
+        if (path == QUADS) {
+            Log.i(TAG, "point sprites: " + format(POINTS) + ", instanced quads: " + format(QUADS));
+            for (int i = 0; i < frames.length; i++) {
+                cpuSum[i] = 0;
+                gpuSum[i] = 0;
+                frames[i] = 0;
+                gpuFrames[i] = 0;
+            }
+        }
+        path = path == POINTS ? QUADS : POINTS;
+    }
+
+    /**
+     * Whether the next frame should draw instanced quads.
+     *
+     * @return true for quads, false for point sprites
+     */
+    public boolean isQuads() {
+        return path == QUADS;
+    }
+
+    private String format(int index) {
+        String gpu = gpuFrames[index] > 0 ? gpuSum[index] / gpuFrames[index] / NANOS_PER_MICRO + " us" : "n/a";
+        return "cpu " + cpuSum[index] / Math.max(1, frames[index]) / NANOS_PER_MICRO + " us, gpu " + gpu;
+    }
+}
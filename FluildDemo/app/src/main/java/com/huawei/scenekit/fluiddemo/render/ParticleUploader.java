@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.shader.VertexBuffer;
+import com.huawei.scenekit.fluiddemo.util.Config;
+import com.huawei.scenekit.fluiddemo.util.ParticlePacker;
+import com.huawei.scenekit.fluiddemo.util.ParticleSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: ParticleUploader
+ *
+ * Staging storage for particle attributes. The buffers are allocated once and each upload
+ * copies only the particles alive in the snapshot, then streams them into a GPU vertex buffer.
+ * In packed mode positions (and weights) are interleaved in the ParticlePacker layout.
+ * Colors rarely change, so they live in their own GPU buffer that is only rewritten when the
+ * snapshot color generation moves.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ParticleUploader {
+    /**
+     * Frames of particle data the stream buffer holds before it is orphaned.
+     */
+    public static final int STREAM_FRAMES = 3;
+
+    /**
+     * Stream buffer size covering STREAM_FRAMES full uploads of positions and weights.
+     */
+    public static final int STREAM_BUFFER_SIZE = STREAM_FRAMES * Config.MAX_NODE_COUNT
+        * (ParticleSnapshot.POSITION_STRIDE + ParticleSnapshot.WEIGHT_STRIDE);
+
+    private final ByteBuffer positionBuffer;
+    private final FloatBuffer positionFloats;
+    private final ByteBuffer colorBuffer;
+    private final ByteBuffer weightBuffer;
+    private final ByteBuffer packedBuffer;
+    private final boolean packed;
+    private VertexBuffer streamBuffer;
+    private VertexBuffer colorVertexBuffer;
+    private int streams = ParticleSnapshot.STREAM_ALL;
+    private int particleCount = 0;
+    private int positionOffset = 0;
+    private int weightOffset = 0;
+    private int stagedColorGeneration = -1;
+    private boolean colorDirty = false;
+
+    /**
+     * Constructor
+     *
+     * @param isPacked whether to use the packed vertex format
+     */
+    public ParticleUploader(boolean isPacked) {
+        packed = isPacked;
+        packedBuffer = isPacked ? allocate(ParticlePacker.MAX_STRIDE * Config.MAX_NODE_COUNT) : null;
+        positionBuffer = allocate(ParticleSnapshot.POSITION_STRIDE * Config.MAX_NODE_COUNT);
+        positionFloats = positionBuffer.asFloatBuffer();
+        colorBuffer = allocate(ParticleSnapshot.COLOR_STRIDE * Config.MAX_NODE_COUNT);
+        weightBuffer = allocate(ParticleSnapshot.WEIGHT_STRIDE * Config.MAX_NODE_COUNT);
+    }
+
+    /**
+     * Create the GPU buffers, must be called on the GL thread after the context is created.
+     */
+    public void onSurfaceCreated() {
+        streamBuffer = new VertexBuffer(STREAM_BUFFER_SIZE);
+        colorVertexBuffer = new VertexBuffer(ParticleSnapshot.COLOR_STRIDE * Config.MAX_NODE_COUNT);
+        // The new color buffer is empty, force a refresh.
+        stagedColorGeneration = -1;
+    }
+
+    /**
+     * Delete the GPU buffers, must be called on the GL thread.
+     */
+    public void release() {
+        if (streamBuffer != null) {
+            streamBuffer.release();
+            colorVertexBuffer.release();
+            streamBuffer = null;
+            colorVertexBuffer = null;
+        }
+    }
+
+    /**
+     * Select the streams consumed by the particle passes, only those are staged and streamed.
+     *
+     * @param streamMask ParticleSnapshot.STREAM_* mask
+     */
+    public void setStreams(int streamMask) {
+        streams = streamMask | ParticleSnapshot.STREAM_POSITION;
+    }
+
+    /**
+     * Obtains the streams consumed by the particle passes.
+     *
+     * @return ParticleSnapshot.STREAM_* mask
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Copies a snapshot into the staging buffers.
+     *
+     * @param snapshot particle snapshot
+     * @param interpolation blend factor between the previous and the current step
+     */
+    public void upload(ParticleSnapshot snapshot, float interpolation) {
+        particleCount = snapshot.getParticleCount();
+        snapshot.interpolatePositions(positionFloats, interpolation);
+        if (hasColor() && snapshot.getColorGeneration() != stagedColorGeneration) {
+            copy(colorBuffer, snapshot.getColors(), particleCount * ParticleSnapshot.COLOR_STRIDE);
+            stagedColorGeneration = snapshot.getColorGeneration();
+            colorDirty = true;
+        }
+        if (packed) {
+            FloatBuffer weights = hasWeight() ? snapshot.getWeightView() : null;
+            ParticlePacker.pack(positionFloats, null, weights, particleCount, Config.WORLD_WIDTH,
+                Config.WORLD_HEIGHT, packedBuffer);
+            return;
+        }
+        if (hasWeight()) {
+            copy(weightBuffer, snapshot.getWeights(), particleCount * ParticleSnapshot.WEIGHT_STRIDE);
+        }
+    }
+
+    /**
+     * Streams the staged attributes consumed by the particle passes into the GPU buffers.
+     */
+    public void stream() {
+        if (colorDirty) {
+            colorVertexBuffer.replace(colorBuffer, particleCount * ParticleSnapshot.COLOR_STRIDE);
+            colorDirty = false;
+        }
+        if (packed) {
+            int offset = streamBuffer.stream(packedBuffer, particleCount * getStride());
+            positionOffset = offset + ParticlePacker.POSITION_OFFSET;
+            weightOffset = offset + ParticlePacker.getWeightOffset(false);
+            return;
+        }
+        positionOffset = streamBuffer.stream(positionBuffer, particleCount * ParticleSnapshot.POSITION_STRIDE);
+        if (hasWeight()) {
+            weightOffset = streamBuffer.stream(weightBuffer, particleCount * ParticleSnapshot.WEIGHT_STRIDE);
+        }
+    }
+
+    /**
+     * Obtains the buffer holding positions and weights.
+     *
+     * @return stream buffer
+     */
+    public VertexBuffer getStreamBuffer() {
+        return streamBuffer;
+    }
+
+    /**
+     * Obtains the buffer holding colors, tightly packed from offset 0.
+     *
+     * @return color buffer
+     */
+    public VertexBuffer getColorVertexBuffer() {
+        return colorVertexBuffer;
+    }
+
+    /**
+     * Obtains the byte offset of the positions written by the last stream call.
+     *
+     * @return byte offset
+     */
+    public int getPositionOffset() {
+        return positionOffset;
+    }
+
+    /**
+     * Obtains the byte offset of the weights written by the last stream call.
+     *
+     * @return byte offset
+     */
+    public int getWeightOffset() {
+        return weightOffset;
+    }
+
+    /**
+     * Obtains the stride to pass with the position and weight offsets.
+     *
+     * @return vertex stride in bytes, 0 for tightly packed separate streams
+     */
+    public int getStride() {
+        return packed ? ParticlePacker.getStride(false, hasWeight()) : 0;
+    }
+
+    /**
+     * Obtains the distance between two particles in the position stream.
+     *
+     * @return stride in bytes, never 0
+     */
+    public int getPositionStride() {
+        return packed ? getStride() : ParticleSnapshot.POSITION_STRIDE;
+    }
+
+    public boolean isPacked() {
+        return packed;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    private boolean hasColor() {
+        return (streams & ParticleSnapshot.STREAM_COLOR) != 0;
+    }
+
+    private boolean hasWeight() {
+        return (streams & ParticleSnapshot.STREAM_WEIGHT) != 0;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    private static void copy(ByteBuffer target, byte[] source, int length) {
+        target.clear();
+        target.put(source, 0, length);
+        target.rewind();
+    }
+}
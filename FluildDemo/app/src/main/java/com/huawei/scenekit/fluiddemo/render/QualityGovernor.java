@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.util.Config;
+
+/**
+ * Description: QualityGovernor
+ *
+ * Picks a QualityTier from measured frame costs. Frames are averaged over windows; the CPU cost is
+ * the slower of rendering and simulation, the GPU cost comes from a timer query when the device has
+ * one. A tier is dropped after a few windows over budget and raised only after a long run of windows
+ * with headroom. Every drop doubles the wait before the next raise, so a device on the edge of a
+ * tier settles instead of oscillating. ResolutionController handles short spikes inside a tier.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class QualityGovernor {
+    private static final int WINDOW_FRAMES = 30;
+    private static final int DOWNGRADE_WINDOWS = 2;
+    private static final int UPGRADE_WINDOWS = 10;
+    private static final int MAX_UPGRADE_WINDOWS = 80;
+    private static final int GAP_RATIO = 4;
+    private static final float LATE_RATIO = 1.2f;
+    private static final float BUSY_RATIO = 0.9f;
+    private static final float ON_TIME_RATIO = 1.05f;
+    private static final float IDLE_RATIO = 0.6f;
+
+    private final long targetNanos;
+    private int tier;
+    private int upgradeWindows = UPGRADE_WINDOWS;
+    private int overWindows = 0;
+    private int underWindows = 0;
+    private long frameSum = 0;
+    private long cpuSum = 0;
+    private long gpuSum = 0;
+    private int frames = 0;
+    private int gpuFrames = 0;
+
+    public QualityGovernor() {
+        this(Config.DEFAULT_QUALITY_TIER, Config.TARGET_FRAME_NANOS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialTier starting tier
+     * @param targetFrameNanos frame time to hold
+     */
+    public QualityGovernor(int initialTier, long targetFrameNanos) {
+        tier = Math.max(0, Math.min(initialTier, QualityTier.getTierCount() - 1));
+        targetNanos = targetFrameNanos;
+    }
+
+    /**
+     * Account for one frame.
+     *
+     * @param frameNanos time since the previous frame
+     * @param cpuNanos CPU time of the frame
+     * @param gpuNanos GPU time of the frame, negative if unknown
+     * @return true if the tier changed
+     */
+    public boolean onFrame(long frameNanos, long cpuNanos, long gpuNanos) {
+        if (frameNanos <= 0 || frameNanos > GAP_RATIO * targetNanos) {
+            return false;
+        }
+        frameSum += frameNanos;
+        cpuSum += cpuNanos;
+        if (gpuNanos >= 0) {
+            gpuSum += gpuNanos;
+            gpuFrames++;
+        }
+        if (++frames < WINDOW_FRAMES) {
+            return false;
+        }
+        boolean changed = evaluate(frameSum / frames, cpuSum / frames, gpuFrames > 0 ? gpuSum / gpuFrames : -1);
+        frameSum = 0;
+        cpuSum = 0;
+        gpuSum = 0;
+        frames = 0;
+        gpuFrames = 0;
+        return changed;
+    }
+
+    public QualityTier getTier() {
+        return QualityTier.getTier(tier);
+    }
+
+    public int getTierIndex() {
+        return tier;
+    }
+
+    private boolean evaluate(long frameNanos, long cpuNanos, long gpuNanos) {
+        boolean isOver = frameNanos > targetNanos * LATE_RATIO || cpuNanos > targetNanos * BUSY_RATIO
+            || gpuNanos > targetNanos * BUSY_RATIO;
+        // Without a GPU timer, frames arriving on time are the only sign the GPU keeps up.
+        boolean isUnder = frameNanos < targetNanos * ON_TIME_RATIO && cpuNanos < targetNanos * IDLE_RATIO
+            && gpuNanos < targetNanos * IDLE_RATIO;
+        overWindows = isOver ? overWindows + 1 : 0;
+        underWindows = isUnder ? underWindows + 1 : 0;
+
+        if (overWindows >= DOWNGRADE_WINDOWS && tier > 0) {
+            tier--;
+            upgradeWindows = Math.min(upgradeWindows * 2, MAX_UPGRADE_WINDOWS);
+            overWindows = 0;
+            underWindows = 0;
+            return true;
+        }
+        if (underWindows >= upgradeWindows && tier < QualityTier.getTierCount() - 1) {
+            tier++;
+            overWindows = 0;
+            underWindows = 0;
+            return true;
+        }
+        return false;
+    }
+}
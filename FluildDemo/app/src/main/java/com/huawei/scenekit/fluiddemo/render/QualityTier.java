@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.util.Config;
+import com.huawei.scenekit.fluiddemo.util.SimulationThread;
+
+/**
+ * Description: QualityTier
+ *
+ * Everything QualityGovernor trades for frame time: solver iterations per step, the range the
+ * offscreen resolution may move in, the water blur and the number of particles new water may add up to.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class QualityTier {
+    /**
+     * Fewest iterations, quarter resolution at most, cheapest blur, water added up to 2000 particles.
+     */
+    public static final QualityTier LOW = new QualityTier(3, 1, 2, 0.25f, 0, 2000);
+
+    /**
+     * Reduced iterations and resolution, water added up to 3500 particles.
+     */
+    public static final QualityTier MEDIUM = new QualityTier(4, 2, 3, 0.35f, 1, 3500);
+
+    /**
+     * The full configuration, the world stepped with the SDK's own solver iterations.
+     */
+    public static final QualityTier HIGH = new QualityTier(SimulationThread.SDK_ITERATIONS,
+        SimulationThread.SDK_ITERATIONS, SimulationThread.SDK_ITERATIONS, Config.MAX_OFFSCREEN_SCALE,
+        Config.DEFAULT_BLUR_TIER, Config.MAX_NODE_COUNT);
+
+    private static final QualityTier[] TIERS = {LOW, MEDIUM, HIGH};
+
+    private final int velocityIterations;
+    private final int positionIterations;
+    private final int particleIterations;
+    private final float maxScale;
+    private final int blurTier;
+    private final int particleBudget;
+
+    /**
+     * Constructor
+     *
+     * @param velocityIterations velocity solver iterations per step, SimulationThread.SDK_ITERATIONS for the SDK's
+     * @param positionIterations position solver iterations per step
+     * @param particleIterations particle solver iterations per step
+     * @param maxScale highest offscreen resolution scale
+     * @param blurTier water blur tier, see BlurConfig.getTier
+     * @param particleBudget max particle count reached by adding water
+     */
+    public QualityTier(int velocityIterations, int positionIterations, int particleIterations, float maxScale,
+        int blurTier, int particleBudget) {
+        this.velocityIterations = velocityIterations;
+        this.positionIterations = positionIterations;
+        this.particleIterations = particleIterations;
+        this.maxScale = Math.max(Config.MIN_OFFSCREEN_SCALE, Math.min(maxScale, Config.MAX_OFFSCREEN_SCALE));
+        this.blurTier = blurTier;
+        this.particleBudget = Math.min(particleBudget, Config.MAX_NODE_COUNT);
+    }
+
+    /**
+     * get a quality tier
+     *
+     * @param tier 0 for the lowest quality, getTierCount() - 1 for the highest
+     * @return quality tier
+     */
+    public static QualityTier getTier(int tier) {
+        return TIERS[Math.max(0, Math.min(tier, TIERS.length - 1))];
+    }
+
+    public static int getTierCount() {
+        return TIERS.length;
+    }
+
+    public int getVelocityIterations() {
+        return velocityIterations;
+    }
+
+    public int getPositionIterations() {
+        return positionIterations;
+    }
+
+    public int getParticleIterations() {
+        return particleIterations;
+    }
+
+    public float getMaxScale() {
+        return maxScale;
+    }
+
+    public int getBlurTier() {
+        return blurTier;
+    }
+
+    public int getParticleBudget() {
+        return particleBudget;
+    }
+}
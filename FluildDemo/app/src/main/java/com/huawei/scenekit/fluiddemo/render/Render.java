@@ -19,6 +19,7 @@ package com.huawei.scenekit.fluiddemo.render;
 import android.app.Activity;
 import android.content.res.Configuration;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
 
@@ -30,8 +31,15 @@ import com.huawei.hms.scene.engine.iphysics.utils.Vector2;
 import com.huawei.hms.scene.sdk.fluid.Body;
 import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
 import com.huawei.hms.scene.sdk.fluid.World;
+import com.huawei.scenekit.fluiddemo.shader.GlCapabilities;
+import com.huawei.scenekit.fluiddemo.shader.GlResourceTracker;
+import com.huawei.scenekit.fluiddemo.shader.GlState;
+import com.huawei.scenekit.fluiddemo.shader.GpuTimer;
 import com.huawei.scenekit.fluiddemo.shader.ProgramUtil;
 import com.huawei.scenekit.fluiddemo.util.Config;
+import com.huawei.scenekit.fluiddemo.util.ParticleSnapshot;
+import com.huawei.scenekit.fluiddemo.util.SimulationThread;
+import com.huawei.scenekit.fluiddemo.util.TripleBuffer;
 import com.huawei.scenekit.fluiddemo.util.WorldManager;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -46,6 +54,9 @@ import javax.microedition.khronos.opengles.GL10;
 public class Render implements GLSurfaceView.Renderer {
     private static Render instance = new Render();
 
+    // Window attachments nothing reads after the frame.
+    private static final int[] WINDOW_DEPTH_STENCIL = {GLES30.GL_DEPTH, GLES30.GL_STENCIL};
+
     private static final int DIAL_KEY_NUM = 10;
     private static final int WATER = 1 << 0;
     private static final int VISCOUS = 1 << 1;
@@ -59,17 +70,30 @@ public class Render implements GLSurfaceView.Renderer {
     private static final int ZOMBIE = 1 << 9;
 
     private WorldManager worldManager;
+    private SimulationThread simulationThread;
     private Activity activity = null;
+    private GLSurfaceView view = null;
     private Body border = null;
     private Body[] circleDialKeyBody = {null};
     private NodeRender nodeRender;
     private CanvasRender canvasRender;
-    private boolean update = false;
+    private final ResolutionController resolutionController = new ResolutionController();
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+    private final ParticlePathBenchmark particlePathBenchmark = new ParticlePathBenchmark();
+    // Null when the context cannot time GPU work.
+    private GpuTimer gpuTimer = null;
+    private long lastFrameTime = 0;
+    private int frameCount = 0;
 
     private Render() {
         worldManager = new WorldManager();
+        simulationThread = new SimulationThread(worldManager);
+        simulationThread.setIdleListener(this::onIdle);
         nodeRender = new NodeRender();
         canvasRender = new CanvasRender();
+        applyQualityTier(qualityGovernor.getTier());
+        // Both particle paths are measured at fixed settings.
+        resolutionController.setEnabled(!Config.BENCHMARK_PARTICLE_PATHS);
     }
 
     public static Render getInstance() {
@@ -93,13 +117,43 @@ public class Render implements GLSurfaceView.Renderer {
 
     @Override
     protected void finalize() {
+        simulationThread.quit();
         deleteAll();
     }
 
+    /**
+     * Delete every GL object on teardown, must be called on the GL thread while the context is alive.
+     * Objects still tracked once the renderers released theirs are reported as leaks.
+     */
+    public void releaseGl() {
+        if (gpuTimer != null) {
+            gpuTimer.release();
+            gpuTimer = null;
+        }
+        nodeRender.release();
+        canvasRender.release();
+        ProgramUtil.release();
+        for (String leak : GlResourceTracker.getLeakReport()) {
+            Log.w("Render", "releaseGl: leaked " + leak);
+        }
+        GlResourceTracker.releaseAll();
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl10, EGLConfig eglConfig) {
-        // Load shaders.
-        ProgramUtil.loadAllShaders(activity.getAssets());
+        // A new context starts from the default state.
+        GlState.reset();
+        // Objects of a lost context are gone with it.
+        int lost = GlResourceTracker.forgetAll();
+        if (lost > 0) {
+            Log.i("Render", "onSurfaceCreated: " + lost + " GL objects went away with the previous context");
+        }
+        GlCapabilities.init();
+        // The queries of a lost context went away with it.
+        gpuTimer = GpuTimer.isSupported() ? new GpuTimer() : null;
+
+        // Programs are compiled when the materials below ask for them.
+        ProgramUtil.init(activity.getAssets(), activity.getCacheDir());
 
         canvasRender.onSurfaceCreated(activity);
 
@@ -120,25 +174,82 @@ public class Render implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl10) {
-        // Simulate particles.
-        simulate();
-
-        // Draw all particles.
+        // Particles are simulated on the simulation thread, draw the latest snapshot.
         draw();
     }
 
+    /**
+     * Attach the view this renderer draws into, so rendering can stop while the fluid is at rest.
+     *
+     * @param glView the view
+     */
+    public void attachView(GLSurfaceView glView) {
+        view = glView;
+    }
+
+    /**
+     * Resume simulation and continuous rendering after the fluid came to rest.
+     */
+    public void wake() {
+        // Leave the idle state first, onIdle checks it after switching the render mode.
+        simulationThread.wake();
+        GLSurfaceView glView = view;
+        if (glView != null) {
+            glView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        }
+    }
+
+    /**
+     * Set the world gravity, waking the fluid if it changed enough.
+     *
+     * @param gravityX gravity x
+     * @param gravityY gravity y
+     */
+    public void setGravity(float gravityX, float gravityY) {
+        World world = worldManager.acquire();
+        try {
+            if (world != null) {
+                world.setGravity(gravityX, gravityY);
+            }
+        } finally {
+            worldManager.release();
+        }
+        if (simulationThread.getIdleDetector().onGravity(gravityX, gravityY)) {
+            wake();
+        }
+    }
+
+    // Called on the simulation thread: draw the final state once, then only on request.
+    private void onIdle() {
+        GLSurfaceView glView = view;
+        if (glView == null) {
+            return;
+        }
+        glView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        if (!simulationThread.getIdleDetector().isIdle()) {
+            // Woken meanwhile.
+            glView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+            return;
+        }
+        glView.requestRender();
+    }
+
     /**
      * Stop simulation.
      */
     public void pause() {
-        update = false;
+        simulationThread.setActive(false);
     }
 
     /**
      * Start simulation.
      */
     public void start() {
-        update = true;
+        if (simulationThread.getState() == Thread.State.NEW) {
+            simulationThread.start();
+        }
+        simulationThread.setActive(true);
+        wake();
     }
 
     /**
@@ -150,12 +261,71 @@ public class Render implements GLSurfaceView.Renderer {
         return worldManager;
     }
 
+    /**
+     * Obtains the particle snapshots published by the simulation thread.
+     *
+     * @return snapshots
+     */
+    public TripleBuffer<ParticleSnapshot> getSnapshots() {
+        return simulationThread.getSnapshots();
+    }
+
+    /**
+     * Select the particle streams the simulation thread copies out of the world.
+     *
+     * @param streams ParticleSnapshot.STREAM_* mask
+     */
+    public void setParticleStreams(int streams) {
+        simulationThread.setStreams(streams);
+    }
+
+    /**
+     * Select the water blur quality, may be called from any thread.
+     *
+     * @param tier 0 for the cheapest blur, BlurConfig.getTierCount() - 1 for the best
+     */
+    public void setBlurTier(int tier) {
+        nodeRender.setBlurConfig(BlurConfig.getTier(tier));
+    }
+
+    /**
+     * Obtains the controller picking the offscreen resolution, only used on the GL thread.
+     *
+     * @return the resolution controller
+     */
+    public ResolutionController getResolutionController() {
+        return resolutionController;
+    }
+
+    /**
+     * Obtains the governor picking the quality tier, only used on the GL thread.
+     *
+     * @return the quality governor
+     */
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    /**
+     * Switch the canvas to the next background.
+     */
+    public void nextBackground() {
+        canvasRender.nextBackground();
+        // Keep drawing until the background is decoded and shown.
+        wake();
+    }
+
     /**
      * Increase the water volume.
      */
     public void addWater() {
         worldManager.acquire();
         try {
+            ParticleSystem system = worldManager.getParticleSystem();
+            if (system.getParticleCount() >= simulationThread.getParticleBudget()) {
+                // The current quality tier allows no more particles.
+                return;
+            }
             ParticleGroupInfo info = new ParticleGroupInfo(
                 ParticleGroupInfo.ParticleFlag.WATER | ParticleGroupInfo.ParticleFlag.MIX_COLOR);
 
@@ -169,11 +339,12 @@ public class Render implements GLSurfaceView.Renderer {
                 30, 144, 255, 220);
             info.setColor(color);
 
-            ParticleSystem system = worldManager.getParticleSystem();
             system.addParticles(info);
+            worldManager.notifyGroupAdded(true);
         } finally {
             worldManager.release();
         }
+        wake();
     }
 
     /**
@@ -184,27 +355,23 @@ public class Render implements GLSurfaceView.Renderer {
         try {
             ParticleSystem system = worldManager.getParticleSystem();
             system.deleteParticles(100);
+            worldManager.notifyGroupsChanged();
         } finally {
             worldManager.release();
         }
-    }
-
-    // Cyclically perform simulation.
-    private void simulate() {
-        if (!update) {
-            return;
-        }
-
-        World world = worldManager.acquire();
-        try {
-            world.singleStep(Config.TIME_INTERVAL);
-        } finally {
-            worldManager.release();
-        }
+        wake();
     }
 
     // Cyclically perform rendering.
     private void draw() {
+        // Frame interval as seen by the GL thread, the controllers ignore the gaps while rendering is paused.
+        long now = System.nanoTime();
+        long frameNanos = lastFrameTime == 0 ? 0 : now - lastFrameTime;
+        lastFrameTime = now;
+        if (gpuTimer != null) {
+            gpuTimer.begin();
+        }
+
         GLES20.glClearColor(0, 0, 0, 0);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
@@ -213,6 +380,50 @@ public class Render implements GLSurfaceView.Renderer {
 
         // Draw particles.
         nodeRender.draw();
+
+        if (GlCapabilities.isEs3()) {
+            GlState.bindFramebuffer(0);
+            GLES30.glInvalidateFramebuffer(GLES20.GL_FRAMEBUFFER, WINDOW_DEPTH_STENCIL.length, WINDOW_DEPTH_STENCIL, 0);
+        }
+
+        if (gpuTimer != null) {
+            gpuTimer.end();
+        }
+        long drawNanos = System.nanoTime() - now;
+        long gpuNanos = gpuTimer != null ? gpuTimer.getLastNanos() : -1;
+        if (Config.BENCHMARK_PARTICLE_PATHS && nodeRender.hasQuadPath()) {
+            particlePathBenchmark.onFrame(drawNanos, gpuNanos);
+            nodeRender.setQuadPath(particlePathBenchmark.isQuads());
+        }
+        // The resolution only changes the draw cost, the GPU result lags a few frames behind.
+        if (resolutionController.onFrame(frameNanos, drawNanos, gpuNanos)) {
+            nodeRender.setResolutionScale(resolutionController.getScale());
+        }
+        // Simulation runs in parallel, the slower of the two threads bounds the frame rate.
+        long cpuNanos = Math.max(drawNanos, simulationThread.getStepNanos());
+        if (Config.ADAPTIVE_QUALITY && !Config.BENCHMARK_PARTICLE_PATHS
+            && qualityGovernor.onFrame(frameNanos, cpuNanos, gpuNanos)) {
+            applyQualityTier(qualityGovernor.getTier());
+            Log.i("Render", "draw: quality tier " + qualityGovernor.getTierIndex() + ", cpu " + cpuNanos / 1000
+                + " us, gpu " + gpuNanos / 1000 + " us");
+        }
+
+        int skipped = GlState.endFrame();
+        int saved = nodeRender.endFrame();
+        if (++frameCount % Config.STATS_LOG_FRAMES == 0) {
+            Log.d("Render", "draw: skipped " + skipped + " redundant GL calls, merged away " + saved + " draw calls, "
+                + GlResourceTracker.getTotalBytes() / 1024 + " KB in " + GlResourceTracker.getCount() + " GL objects");
+        }
+    }
+
+    private void applyQualityTier(QualityTier tier) {
+        simulationThread.setSolverIterations(tier.getVelocityIterations(), tier.getPositionIterations(),
+            tier.getParticleIterations());
+        simulationThread.setParticleBudget(tier.getParticleBudget());
+        setBlurTier(tier.getBlurTier());
+        if (resolutionController.setLimits(Config.MIN_OFFSCREEN_SCALE, tier.getMaxScale())) {
+            nodeRender.setResolutionScale(resolutionController.getScale());
+        }
     }
 
     private void deleteAll() {
@@ -351,9 +562,11 @@ public class Render implements GLSurfaceView.Renderer {
 
                 ParticleSystem system = worldManager.getParticleSystem();
                 system.addParticles(groupDef);
+                worldManager.notifyGroupAdded(true);
         } finally {
             worldManager.release();
         }
+        wake();
     }
 
     // Adjust the view size.
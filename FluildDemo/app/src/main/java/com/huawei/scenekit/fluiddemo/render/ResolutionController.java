@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import com.huawei.scenekit.fluiddemo.util.Config;
+
+/**
+ * Description: ResolutionController
+ *
+ * Moves the offscreen resolution scale within bounds to hold a target frame time.
+ * It follows the measured cost of each frame, the CPU time of the draw or the GPU time when known,
+ * not the frame interval: the interval is quantized to vsync and says nothing about the headroom
+ * left within it. Costs are averaged, the scale drops quickly when a frame takes most of the budget
+ * and grows slowly when there is headroom, and waits after each change so surfaces are not
+ * recreated every frame. Spikes far above the target, e.g. a shader compile, are ignored.
+ * Without a GPU timer the CPU time does not grow with the resolution, so it cannot show headroom:
+ * the scale only drops, on frames that missed their vsync, and never rises on its own.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ResolutionController {
+    private static final float AVERAGE_WEIGHT = 0.1f;
+    // Leaves room for the swap and the compositor. One step up costs UP_FACTOR^2 more pixels,
+    // FAST_RATIO * UP_FACTOR^2 stays below SLOW_RATIO so the scale does not oscillate.
+    private static final float SLOW_RATIO = 0.9f;
+    private static final float FAST_RATIO = 0.6f;
+    private static final float DOWN_FACTOR = 0.85f;
+    private static final float UP_FACTOR = 1.1f;
+    private static final int COOLDOWN_FRAMES = 30;
+    private static final int GAP_RATIO = 4;
+    // Interval of a frame that missed its vsync, the GPU-bound signal without a GPU timer.
+    private static final float LATE_RATIO = 1.2f;
+
+    private final long targetNanos;
+    private float minScale;
+    private float maxScale;
+    private float scale;
+    private float averageNanos;
+    private int cooldown = COOLDOWN_FRAMES;
+    private boolean enabled = true;
+
+    public ResolutionController() {
+        this(Config.OFFSCREEN_SCALE, Config.MIN_OFFSCREEN_SCALE, Config.MAX_OFFSCREEN_SCALE,
+            Config.TARGET_FRAME_NANOS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialScale starting scale
+     * @param min lowest scale
+     * @param max highest scale
+     * @param targetFrameNanos frame time to hold
+     */
+    public ResolutionController(float initialScale, float min, float max, long targetFrameNanos) {
+        minScale = min;
+        maxScale = max;
+        targetNanos = targetFrameNanos;
+        scale = Math.max(min, Math.min(initialScale, max));
+        averageNanos = targetFrameNanos;
+    }
+
+    /**
+     * Account for one frame.
+     *
+     * @param frameNanos time since the previous frame
+     * @param drawNanos CPU time of the draw
+     * @param gpuNanos GPU time of the frame, negative if unknown
+     * @return true if the scale changed
+     */
+    public boolean onFrame(long frameNanos, long drawNanos, long gpuNanos) {
+        if (!enabled || frameNanos > GAP_RATIO * targetNanos) {
+            return false;
+        }
+        boolean isGpuKnown = gpuNanos >= 0;
+        long costNanos = Math.max(drawNanos, gpuNanos);
+        if (!isGpuKnown && frameNanos > targetNanos * LATE_RATIO) {
+            costNanos = frameNanos;
+        }
+        if (costNanos <= 0 || costNanos > GAP_RATIO * targetNanos) {
+            return false;
+        }
+        averageNanos += (costNanos - averageNanos) * AVERAGE_WEIGHT;
+        if (cooldown > 0) {
+            cooldown--;
+            return false;
+        }
+        float next = scale;
+        if (averageNanos > targetNanos * SLOW_RATIO) {
+            next = Math.max(minScale, scale * DOWN_FACTOR);
+        } else if (averageNanos < targetNanos * FAST_RATIO && isGpuKnown) {
+            next = Math.min(maxScale, scale * UP_FACTOR);
+        }
+        if (next == scale) {
+            return false;
+        }
+        scale = next;
+        cooldown = COOLDOWN_FRAMES;
+        // Frames measured at the old scale say nothing about the new one.
+        averageNanos = targetNanos;
+        return true;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Narrow or widen the range the scale moves in.
+     *
+     * @param min lowest scale
+     * @param max highest scale
+     * @return true if the scale was clamped into the new range
+     */
+    public boolean setLimits(float min, float max) {
+        minScale = min;
+        maxScale = max;
+        float next = Math.max(min, Math.min(scale, max));
+        if (next == scale) {
+            return false;
+        }
+        scale = next;
+        cooldown = COOLDOWN_FRAMES;
+        averageNanos = targetNanos;
+        return true;
+    }
+
+    /**
+     * Fix the scale, or let the controller move it again.
+     *
+     * @param isEnabled whether the scale follows the frame cost
+     */
+    public void setEnabled(boolean isEnabled) {
+        enabled = isEnabled;
+    }
+}
@@ -18,7 +18,11 @@ package com.huawei.scenekit.fluiddemo.render;
 
 import android.graphics.Color;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
+import com.huawei.scenekit.fluiddemo.shader.GlCapabilities;
+import com.huawei.scenekit.fluiddemo.shader.GlResourceTracker;
+import com.huawei.scenekit.fluiddemo.shader.GlState;
 import com.huawei.scenekit.fluiddemo.shader.Texture;
 
 /**
@@ -28,6 +32,8 @@ import com.huawei.scenekit.fluiddemo.shader.Texture;
  * @since 2021-06-29
  */
 public class Surface {
+    private static final int[] COLOR_ATTACHMENT = {GLES20.GL_COLOR_ATTACHMENT0};
+
     private int[] frameBuffer = new int[1];
     private Texture texture;
     private int width;
@@ -39,18 +45,21 @@ public class Surface {
         this.height = height;
 
         GLES20.glGenFramebuffers(1, frameBuffer, 0);
+        GlResourceTracker.register(GlResourceTracker.Type.FRAMEBUFFER, frameBuffer[0], 0,
+            "surface " + width + "x" + height);
         texture = new Texture();
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
+        GlState.bindTexture(0, texture.getTextureId());
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, this.width, this.height, 0,
                 GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer[0]);
+        texture.setByteSize((long) this.width * this.height * 4); // 4: RGBA8 texels
+        GlState.bindFramebuffer(frameBuffer[0]);
         GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
                 GLES20.GL_TEXTURE_2D, texture.getTextureId(), 0);
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GlState.bindFramebuffer(0);
     }
 
     /**
@@ -59,7 +68,7 @@ public class Surface {
      * @param clearMask gl clear mask
      */
     public void beginRender(int clearMask) {
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer[0]);
+        GlState.bindFramebuffer(frameBuffer[0]);
         GLES20.glViewport(0, 0, width, height);
         if (clearMask != 0) {
             GLES20.glClearColor(Color.red(color), Color.blue(color), Color.green(color), Color.alpha(color));
@@ -71,13 +80,43 @@ public class Surface {
      * end render
      */
     public void endRender() {
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GlState.bindFramebuffer(0);
+    }
+
+    /**
+     * Tell the driver the content is no longer needed, so tile based GPUs neither load nor
+     * store it. Does nothing before OpenGL ES 3.0.
+     */
+    public void invalidate() {
+        if (!GlCapabilities.isEs3()) {
+            return;
+        }
+        GlState.bindFramebuffer(frameBuffer[0]);
+        GLES30.glInvalidateFramebuffer(GLES20.GL_FRAMEBUFFER, 1, COLOR_ATTACHMENT, 0);
+        GlState.bindFramebuffer(0);
     }
 
     public Texture getTexture() {
         return texture;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Delete the framebuffer and its texture, must be called on the GL thread.
+     */
+    public void release() {
+        GlState.bindFramebuffer(0);
+        GlResourceTracker.release(GlResourceTracker.Type.FRAMEBUFFER, frameBuffer[0]);
+        texture.release();
+    }
+
     /**
      * set clear color
      *
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+/**
+ * Description: GlBinding
+ *
+ * The GL calls GlResourceTracker makes, so it can run against a fake binding without a context.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public interface GlBinding {
+    /**
+     * Delete a GL object.
+     *
+     * @param type object type
+     * @param id object name
+     */
+    void delete(GlResourceTracker.Type type, int id);
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+
+/**
+ * Description: GlCapabilities
+ *
+ * Features of the current context, read once when the context is created.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class GlCapabilities {
+    private static final String VERSION_PREFIX = "OpenGL ES ";
+
+    private static int majorVersion = 2;
+    private static int[] compressedFormats = new int[0];
+    private static String extensions = "";
+
+    private GlCapabilities() {
+    }
+
+    /**
+     * Read the capabilities of the current context, must be called on the GL thread.
+     */
+    public static void init() {
+        majorVersion = parseMajorVersion(GLES20.glGetString(GLES20.GL_VERSION));
+        String extensionString = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        extensions = extensionString == null ? "" : " " + extensionString + " ";
+
+        int[] count = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+        compressedFormats = new int[Math.max(0, count[0])];
+        if (compressedFormats.length > 0) {
+            GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, compressedFormats, 0);
+        }
+    }
+
+    /**
+     * Whether textures can be uploaded in a compressed format, e.g. ETC2 on every ES 3 device
+     * or ASTC where the extension is present.
+     *
+     * @param internalFormat compressed internal format
+     * @return true if the format is supported
+     */
+    public static boolean isCompressedFormatSupported(int internalFormat) {
+        for (int format : compressedFormats) {
+            if (format == internalFormat) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the context exposes an extension.
+     *
+     * @param name extension name, e.g. GL_EXT_disjoint_timer_query
+     * @return true if the extension is present
+     */
+    public static boolean hasExtension(String name) {
+        // Names are space separated, match whole names only.
+        return extensions.contains(" " + name + " ");
+    }
+
+    /**
+     * Parses "OpenGL ES N.M vendor specific".
+     *
+     * @param version GL_VERSION string
+     * @return major version, 2 if unknown
+     */
+    private static int parseMajorVersion(String version) {
+        if (version == null || !version.startsWith(VERSION_PREFIX)) {
+            return 2;
+        }
+        int start = VERSION_PREFIX.length();
+        int end = start;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return 2;
+        }
+        return Integer.parseInt(version.substring(start, end));
+    }
+
+    public static int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * Whether the context is OpenGL ES 3.0 or later, so GLES30 entry points can be called.
+     *
+     * @return true for ES 3
+     */
+    public static boolean isEs3() {
+        return majorVersion >= 3;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: GlResourceTracker
+ *
+ * Registry of every GL object the renderers create, with an estimate of its GPU memory.
+ * Objects are registered when created and deleted through release, so whatever is still
+ * registered after the owners released their objects is a leak. Only valid on the GL thread.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class GlResourceTracker {
+    /**
+     * GL object types.
+     */
+    public enum Type {
+        TEXTURE,
+        FRAMEBUFFER,
+        BUFFER,
+        PROGRAM,
+        VERTEX_ARRAY,
+        QUERY
+    }
+
+    /**
+     * Deletes through GLES20 and GLES30.
+     */
+    public static final GlBinding GLES_BINDING = (type, id) -> {
+        int[] ids = {id};
+        switch (type) {
+            case TEXTURE:
+                GLES20.glDeleteTextures(1, ids, 0);
+                break;
+            case FRAMEBUFFER:
+                GLES20.glDeleteFramebuffers(1, ids, 0);
+                break;
+            case BUFFER:
+                GLES20.glDeleteBuffers(1, ids, 0);
+                break;
+            case PROGRAM:
+                GLES20.glDeleteProgram(id);
+                break;
+            case VERTEX_ARRAY:
+                GLES30.glDeleteVertexArrays(1, ids, 0);
+                break;
+            case QUERY:
+                GLES30.glDeleteQueries(1, ids, 0);
+                break;
+            default:
+                break;
+        }
+    };
+
+    private static class Resource {
+        final String label;
+        long bytes;
+
+        Resource(String label, long bytes) {
+            this.label = label;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final Map<Type, Map<Integer, Resource>> RESOURCES = new EnumMap<>(Type.class);
+
+    private static GlBinding binding = GLES_BINDING;
+
+    static {
+        for (Type type : Type.values()) {
+            RESOURCES.put(type, new LinkedHashMap<>());
+        }
+    }
+
+    private GlResourceTracker() {
+    }
+
+    /**
+     * Select the GL calls, GLES_BINDING unless testing.
+     *
+     * @param glBinding the binding
+     */
+    public static void setBinding(GlBinding glBinding) {
+        binding = glBinding;
+    }
+
+    /**
+     * Register a created object.
+     *
+     * @param type object type
+     * @param id object name
+     * @param bytes estimated GPU memory
+     * @param label what the object is for, shown in the leak report
+     */
+    public static void register(Type type, int id, long bytes, String label) {
+        if (id != 0) {
+            RESOURCES.get(type).put(id, new Resource(label, bytes));
+        }
+    }
+
+    /**
+     * Update the estimated GPU memory of an object, e.g. after its storage was allocated.
+     *
+     * @param type object type
+     * @param id object name
+     * @param bytes estimated GPU memory
+     */
+    public static void setBytes(Type type, int id, long bytes) {
+        Resource resource = RESOURCES.get(type).get(id);
+        if (resource != null) {
+            resource.bytes = bytes;
+        }
+    }
+
+    /**
+     * Delete an object and stop tracking it.
+     *
+     * @param type object type
+     * @param id object name
+     */
+    public static void release(Type type, int id) {
+        if (RESOURCES.get(type).remove(id) != null) {
+            binding.delete(type, id);
+        }
+    }
+
+    /**
+     * Delete every tracked object, on teardown.
+     */
+    public static void releaseAll() {
+        for (Map.Entry<Type, Map<Integer, Resource>> entry : RESOURCES.entrySet()) {
+            for (Integer id : entry.getValue().keySet()) {
+                binding.delete(entry.getKey(), id);
+            }
+            entry.getValue().clear();
+        }
+        // The shadow state may name deleted objects.
+        GlState.reset();
+    }
+
+    /**
+     * Stop tracking every object without deleting anything, call when a new context is created:
+     * the objects of the lost context are gone with it.
+     *
+     * @return number of objects that were still tracked
+     */
+    public static int forgetAll() {
+        int count = getCount();
+        for (Map<Integer, Resource> resources : RESOURCES.values()) {
+            resources.clear();
+        }
+        return count;
+    }
+
+    /**
+     * get count
+     *
+     * @return number of tracked objects
+     */
+    public static int getCount() {
+        int count = 0;
+        for (Map<Integer, Resource> resources : RESOURCES.values()) {
+            count += resources.size();
+        }
+        return count;
+    }
+
+    /**
+     * get bytes
+     *
+     * @param type object type
+     * @return estimated GPU memory of the tracked objects of this type
+     */
+    public static long getBytes(Type type) {
+        long bytes = 0;
+        for (Resource resource : RESOURCES.get(type).values()) {
+            bytes += resource.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * get total bytes
+     *
+     * @return estimated GPU memory of all tracked objects
+     */
+    public static long getTotalBytes() {
+        long bytes = 0;
+        for (Type type : Type.values()) {
+            bytes += getBytes(type);
+        }
+        return bytes;
+    }
+
+    /**
+     * Lists the tracked objects, call after the owners released theirs to find leaks.
+     *
+     * @return one line per object, empty if nothing is tracked
+     */
+    public static List<String> getLeakReport() {
+        List<String> report = new ArrayList<>();
+        for (Map.Entry<Type, Map<Integer, Resource>> entry : RESOURCES.entrySet()) {
+            for (Map.Entry<Integer, Resource> resource : entry.getValue().entrySet()) {
+                report.add(entry.getKey() + " " + resource.getKey() + " (" + resource.getValue().label + "), "
+                    + resource.getValue().bytes + " bytes");
+            }
+        }
+        return report;
+    }
+}
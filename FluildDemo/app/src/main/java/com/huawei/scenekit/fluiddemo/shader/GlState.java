@@ -0,0 +1,253 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Description: GlState
+ *
+ * Shadow copy of the GL state the renderers touch: program, textures per unit, blend,
+ * enabled vertex attribute arrays, framebuffer, array buffer and vertex array object. Setters skip calls that
+ * would not change anything, so the driver is never queried and redundant work is never
+ * issued. Only valid on the GL thread, reset whenever a new context is created.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class GlState {
+    private static final int MAX_TEXTURE_UNITS = 8;
+
+    private static final int UNKNOWN = -1;
+
+    private static final int[] TEXTURES = new int[MAX_TEXTURE_UNITS];
+
+    private static int program;
+    private static int activeUnit;
+    private static int blendEnabled;
+    private static int blendSrc;
+    private static int blendDst;
+    private static int enabledAttributes;
+    private static int framebuffer;
+    private static int arrayBuffer;
+    private static int vertexArray;
+    private static int skippedCalls = 0;
+    private static int lastFrameSkippedCalls = 0;
+
+    static {
+        reset();
+    }
+
+    private GlState() {
+    }
+
+    /**
+     * Forget the cached state, must be called when a new context is created.
+     * Enabled attributes start at 0 as in a fresh context, the rest is unknown.
+     */
+    public static void reset() {
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            TEXTURES[i] = UNKNOWN;
+        }
+        blendEnabled = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        enabledAttributes = 0;
+        framebuffer = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        vertexArray = 0;
+        skippedCalls = 0;
+    }
+
+    /**
+     * use program
+     *
+     * @param programId program id
+     */
+    public static void useProgram(int programId) {
+        if (program == programId) {
+            skippedCalls++;
+            return;
+        }
+        GLES20.glUseProgram(programId);
+        program = programId;
+    }
+
+    /**
+     * Bind a 2D texture to a texture unit.
+     *
+     * @param unit texture unit index, from 0
+     * @param textureId texture id
+     */
+    public static void bindTexture(int unit, int textureId) {
+        if (unit >= MAX_TEXTURE_UNITS) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            activeUnit = unit;
+            return;
+        }
+        if (TEXTURES[unit] == textureId) {
+            skippedCalls++;
+            return;
+        }
+        if (activeUnit != unit) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+            activeUnit = unit;
+        } else {
+            skippedCalls++;
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        TEXTURES[unit] = textureId;
+    }
+
+    /**
+     * Forget a texture, so a new texture reusing its id is bound again.
+     *
+     * @param textureId texture id
+     */
+    public static void forgetTexture(int textureId) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (TEXTURES[i] == textureId) {
+                TEXTURES[i] = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * set blend
+     *
+     * @param isEnabled whether blending is enabled
+     * @param src blend src factor, ignored when disabled
+     * @param dst blend dst factor, ignored when disabled
+     */
+    public static void setBlend(boolean isEnabled, int src, int dst) {
+        int enabled = isEnabled ? 1 : 0;
+        if (blendEnabled != enabled) {
+            if (isEnabled) {
+                GLES20.glEnable(GLES20.GL_BLEND);
+            } else {
+                GLES20.glDisable(GLES20.GL_BLEND);
+            }
+            blendEnabled = enabled;
+        } else {
+            skippedCalls++;
+        }
+        if (!isEnabled) {
+            return;
+        }
+        if (blendSrc == src && blendDst == dst) {
+            skippedCalls++;
+            return;
+        }
+        GLES20.glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+    }
+
+    /**
+     * Enable exactly the vertex attribute arrays in a mask, disabling the others.
+     * Tracks the default vertex array object, only call it while that one is bound.
+     *
+     * @param mask bit i set enables the attribute at location i
+     */
+    public static void setEnabledAttributes(int mask) {
+        int changed = enabledAttributes ^ mask;
+        skippedCalls += Integer.bitCount(mask & ~changed);
+        while (changed != 0) {
+            int location = Integer.numberOfTrailingZeros(changed);
+            if ((mask & (1 << location)) != 0) {
+                GLES20.glEnableVertexAttribArray(location);
+            } else {
+                GLES20.glDisableVertexAttribArray(location);
+            }
+            changed &= changed - 1;
+        }
+        enabledAttributes = mask;
+    }
+
+    /**
+     * bind framebuffer
+     *
+     * @param framebufferId framebuffer id, 0 for the window
+     */
+    public static void bindFramebuffer(int framebufferId) {
+        if (framebuffer == framebufferId) {
+            skippedCalls++;
+            return;
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        framebuffer = framebufferId;
+    }
+
+    /**
+     * Bind to GL_ARRAY_BUFFER.
+     *
+     * @param bufferId buffer id, 0 for client-side arrays
+     */
+    public static void bindArrayBuffer(int bufferId) {
+        if (arrayBuffer == bufferId) {
+            skippedCalls++;
+            return;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+        arrayBuffer = bufferId;
+    }
+
+    /**
+     * Bind a vertex array object, OpenGL ES 3.0 only.
+     *
+     * @param vertexArrayId vertex array id, 0 for the default one
+     */
+    public static void bindVertexArray(int vertexArrayId) {
+        if (vertexArray == vertexArrayId) {
+            skippedCalls++;
+            return;
+        }
+        GLES30.glBindVertexArray(vertexArrayId);
+        vertexArray = vertexArrayId;
+    }
+
+    /**
+     * Count a call skipped by a caller that tracks the state itself.
+     */
+    static void countSkipped() {
+        skippedCalls++;
+    }
+
+    /**
+     * Close the frame statistics, call once per frame.
+     *
+     * @return number of GL calls skipped during the frame
+     */
+    public static int endFrame() {
+        lastFrameSkippedCalls = skippedCalls;
+        skippedCalls = 0;
+        return lastFrameSkippedCalls;
+    }
+
+    /**
+     * Obtains the number of GL calls skipped during the last complete frame.
+     *
+     * @return skipped calls
+     */
+    public static int getLastFrameSkippedCalls() {
+        return lastFrameSkippedCalls;
+    }
+}
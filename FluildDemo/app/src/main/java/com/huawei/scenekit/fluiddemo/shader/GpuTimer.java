@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Description: GpuTimer
+ *
+ * Measures GPU time of a frame with GL_EXT_disjoint_timer_query. Queries are kept in a ring and
+ * read a few frames later, once their result is available, so the CPU never waits for the GPU.
+ * Results are dropped when the GPU reports a disjoint event, e.g. a frequency change.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class GpuTimer {
+    /**
+     * Extension providing GL_TIME_ELAPSED queries on OpenGL ES.
+     */
+    public static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int RING_SIZE = 4;
+
+    private final int[] queries = new int[RING_SIZE];
+    private final boolean[] pending = new boolean[RING_SIZE];
+    private final int[] result = new int[1];
+    private int current = 0;
+    private boolean running = false;
+    private long lastNanos = -1;
+
+    /**
+     * Create the queries, must be called on the GL thread when isSupported is true.
+     */
+    public GpuTimer() {
+        GLES30.glGenQueries(RING_SIZE, queries, 0);
+        for (int query : queries) {
+            GlResourceTracker.register(GlResourceTracker.Type.QUERY, query, 0, "gpu timer");
+        }
+    }
+
+    /**
+     * Whether the current context can time GPU work.
+     *
+     * @return true if the timer query extension is present
+     */
+    public static boolean isSupported() {
+        return GlCapabilities.isEs3() && GlCapabilities.hasExtension(EXTENSION);
+    }
+
+    /**
+     * Start timing, at most one timer may run at a time.
+     */
+    public void begin() {
+        collect();
+        if (pending[current]) {
+            // The GPU is more than RING_SIZE frames behind, skip this frame.
+            return;
+        }
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[current]);
+        running = true;
+    }
+
+    /**
+     * Stop timing the work issued since begin.
+     */
+    public void end() {
+        if (!running) {
+            return;
+        }
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        pending[current] = true;
+        current = (current + 1) % RING_SIZE;
+        running = false;
+    }
+
+    /**
+     * Obtains the GPU time of the latest frame whose result arrived.
+     *
+     * @return nanoseconds, -1 before the first result
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Delete the queries, must be called on the GL thread.
+     */
+    public void release() {
+        for (int query : queries) {
+            GlResourceTracker.release(GlResourceTracker.Type.QUERY, query);
+        }
+    }
+
+    // Read every available result, oldest first.
+    private void collect() {
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        boolean isDisjoint = result[0] != 0;
+        for (int i = 0; i < RING_SIZE; i++) {
+            int index = (current + i) % RING_SIZE;
+            if (!pending[index]) {
+                continue;
+            }
+            GLES30.glGetQueryObjectuiv(queries[index], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if (result[0] == 0) {
+                // Later queries cannot be ready either.
+                return;
+            }
+            GLES30.glGetQueryObjectuiv(queries[index], GLES30.GL_QUERY_RESULT, result, 0);
+            pending[index] = false;
+            if (!isDisjoint) {
+                lastNanos = result[0] & 0xFFFFFFFFL;
+            }
+        }
+    }
+}
@@ -17,19 +17,31 @@
 package com.huawei.scenekit.fluiddemo.shader;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.util.Log;
 
 import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Description: Material
  *
+ * On OpenGL ES 3.0 the attribute setup lives in a vertex array object, so enabled arrays and
+ * unchanged buffer pointers carry over between frames. Client-side arrays cannot be used with
+ * a vertex array object, a material that sets one falls back to the ES 2.0 path.
+ *
  * @author HUAWEI
  * @since 2021-06-29
  */
 public class Material {
+    /**
+     * Handle of a name that is not active in the program, setters ignore it.
+     */
+    public static final int INVALID_HANDLE = -1;
+
     private static final String TAG = "Material";
 
     /**
@@ -72,6 +84,12 @@ public class Material {
         int type;
         boolean normalized;
         int location;
+        int divisor = 0;
+
+        // Pointer last set in the vertex array object.
+        int boundBuffer = -1;
+        int boundOffset = -1;
+        int boundStride = -1;
 
 
         public Attribute(String attriName, int attriCount, int attriSize, int attriType, boolean isNormalized,
@@ -92,6 +110,15 @@ public class Material {
 
     private Map<String, Attribute> attributes = new HashMap<>();
     private Map<String, Texture> textures = new HashMap<>();
+
+    // Indexed copies of the maps, iterated per frame without allocating iterators.
+    // An attribute handle is its index in attributeList.
+    private List<Attribute> attributeList = new ArrayList<>();
+    private List<Texture> textureList = new ArrayList<>();
+    private List<Integer> textureLocations = new ArrayList<>();
+    private int attributeMask = 0;
+    private final int[] vertexArray = new int[1];
+    private boolean clientArrays = false;
     private Program program = null;
     private BlendPara blend = new BlendPara();
 
@@ -126,6 +153,32 @@ public class Material {
 
         Attribute attribute = new Attribute(name, elementCount, elementSize, valueType, isNormalized, location);
         attributes.put(name, attribute);
+        attributeList.add(attribute);
+        attributeMask |= 1 << location;
+    }
+
+    /**
+     * Make an attribute advance once per instance instead of once per vertex, OpenGL ES 3.0 only.
+     * Must be called before the first startRender.
+     *
+     * @param handle attribute handle
+     * @param divisor instances per attribute element, 0 for per vertex
+     */
+    public void setAttributeDivisor(int handle, int divisor) {
+        if (handle >= 0) {
+            attributeList.get(handle).divisor = divisor;
+        }
+    }
+
+    /**
+     * Whether the program consumes an attribute. Inactive attributes are optimized out by the
+     * compiler, so their data does not need to be fetched.
+     *
+     * @param name attribute name
+     * @return true if the attribute is active
+     */
+    public boolean usesAttribute(String name) {
+        return program.getAttributeLocation(name) >= 0;
     }
 
     /**
@@ -140,6 +193,29 @@ public class Material {
             return;
         }
         textures.put(name, texture);
+        textureList.add(texture);
+        textureLocations.add(getUniformLocation(name));
+    }
+
+    /**
+     * Resolve an attribute name once, for the handle based setters.
+     *
+     * @param name attribute name
+     * @return attribute handle, or INVALID_HANDLE if it was not added
+     */
+    public int getAttributeHandle(String name) {
+        Attribute attr = attributes.get(name);
+        return attr == null ? INVALID_HANDLE : attributeList.indexOf(attr);
+    }
+
+    /**
+     * Resolve a uniform name once, for the handle based setters.
+     *
+     * @param name uniform name
+     * @return uniform handle, or INVALID_HANDLE if the program does not use it
+     */
+    public int getUniformHandle(String name) {
+        return getUniformLocation(name);
     }
 
     /**
@@ -150,9 +226,19 @@ public class Material {
      * @param textureId texture id
      */
     public void updateUniformTexture(String name, int index, int textureId) {
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + index);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-        GLES20.glUniform1i(getUniformLocation(name), index);
+        updateUniformTexture(getUniformHandle(name), index, textureId);
+    }
+
+    /**
+     * update uniform texture
+     *
+     * @param handle uniform handle
+     * @param index the index
+     * @param textureId texture id
+     */
+    public void updateUniformTexture(int handle, int index, int textureId) {
+        GlState.bindTexture(index, textureId);
+        GLES20.glUniform1i(handle, index);
     }
 
     /**
@@ -162,7 +248,17 @@ public class Material {
      * @param value set value
      */
     public void updateUniform(String name, float value) {
-        GLES20.glUniform1f(getUniformLocation(name), value);
+        updateUniform(getUniformHandle(name), value);
+    }
+
+    /**
+     * update uniform
+     *
+     * @param handle uniform handle
+     * @param value set value
+     */
+    public void updateUniform(int handle, float value) {
+        GLES20.glUniform1f(handle, value);
     }
 
     /**
@@ -172,21 +268,55 @@ public class Material {
      * @param value set value
      */
     public void updateUniform(String name, float[] value) {
+        updateUniform(getUniformHandle(name), value);
+    }
+
+    /**
+     * update uniform
+     *
+     * @param handle uniform handle
+     * @param value set value
+     */
+    public void updateUniform(int handle, float[] value) {
         switch (value.length) {
+            case 2:
+                GLES20.glUniform2fv(handle, 1, value, 0);
+                break;
             case 3:
-                GLES20.glUniform3fv(getUniformLocation(name), 1, value, 0);
+                GLES20.glUniform3fv(handle, 1, value, 0);
                 break;
             case 4:
-                GLES20.glUniform4fv(getUniformLocation(name), 1, value, 0);
+                GLES20.glUniform4fv(handle, 1, value, 0);
                 break;
             case 16:
-                GLES20.glUniformMatrix4fv(getUniformLocation(name), 1, false, value, 0);
+                GLES20.glUniformMatrix4fv(handle, 1, false, value, 0);
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * update uniform
+     *
+     * @param handle uniform handle
+     * @param value set value
+     */
+    public void updateUniformInt(int handle, int value) {
+        GLES20.glUniform1i(handle, value);
+    }
+
+    /**
+     * update float array uniform
+     *
+     * @param handle uniform handle of the array
+     * @param values set values
+     * @param count number of elements to set
+     */
+    public void updateUniformArray(int handle, float[] values, int count) {
+        GLES20.glUniform1fv(handle, count, values, 0);
+    }
+
     /**
      * draw
      *
@@ -198,6 +328,18 @@ public class Material {
         GLES20.glDrawArrays(type, offset, count);
     }
 
+    /**
+     * draw instanced, OpenGL ES 3.0 only
+     *
+     * @param type mode type
+     * @param offset array offset
+     * @param count vertices per instance
+     * @param instanceCount instance number
+     */
+    public void drawInstanced(int type, int offset, int count, int instanceCount) {
+        GLES30.glDrawArraysInstanced(type, offset, count, instanceCount);
+    }
+
     /**
      * get uniform location
      *
@@ -233,35 +375,117 @@ public class Material {
      * @param stride the stride
      */
     public void setVertexBuffer(String attrName, Buffer buffer, int offset, int stride) {
-        Attribute attr = attributes.get(attrName);
+        setVertexBuffer(getAttributeHandle(attrName), buffer, offset, stride);
+    }
+
+    /**
+     * set vertex buffer
+     *
+     * @param handle attribute handle
+     * @param buffer vertex buffer
+     * @param offset buffer offset
+     * @param stride the stride
+     */
+    public void setVertexBuffer(int handle, Buffer buffer, int offset, int stride) {
+        if (handle < 0) {
+            return;
+        }
+        Attribute attr = attributeList.get(handle);
+        if (!clientArrays && vertexArray[0] != 0) {
+            // Client-side arrays need the default vertex array object.
+            clientArrays = true;
+            GlState.bindVertexArray(0);
+            GlState.setEnabledAttributes(attributeMask);
+        }
+        // Client-side arrays are only read while no buffer object is bound.
+        GlState.bindArrayBuffer(0);
         buffer.position(offset);
         GLES20.glVertexAttribPointer(attr.location, attr.elementCount, attr.type, attr.normalized, stride, buffer);
     }
 
+    /**
+     * set vertex buffer
+     *
+     * @param attrName the attrName
+     * @param buffer GPU vertex buffer
+     * @param byteOffset offset of the first element in bytes
+     * @param stride the stride
+     */
+    public void setVertexBuffer(String attrName, VertexBuffer buffer, int byteOffset, int stride) {
+        setVertexBuffer(getAttributeHandle(attrName), buffer, byteOffset, stride);
+    }
+
+    /**
+     * set vertex buffer
+     *
+     * @param handle attribute handle
+     * @param buffer GPU vertex buffer
+     * @param byteOffset offset of the first element in bytes
+     * @param stride the stride
+     */
+    public void setVertexBuffer(int handle, VertexBuffer buffer, int byteOffset, int stride) {
+        if (handle < 0) {
+            return;
+        }
+        Attribute attr = attributeList.get(handle);
+        boolean isVertexArray = vertexArray[0] != 0 && !clientArrays;
+        if (isVertexArray && attr.boundBuffer == buffer.getBufferId() && attr.boundOffset == byteOffset
+            && attr.boundStride == stride) {
+            GlState.countSkipped();
+            return;
+        }
+        buffer.bind();
+        GLES20.glVertexAttribPointer(attr.location, attr.elementCount, attr.type, attr.normalized, stride,
+            byteOffset);
+        if (isVertexArray) {
+            attr.boundBuffer = buffer.getBufferId();
+            attr.boundOffset = byteOffset;
+            attr.boundStride = stride;
+        }
+    }
+
     /**
      * start render
      */
     public void startRender() {
         program.useProgram();
 
-        // enable blend
-        if (blend.enable) {
-            GLES20.glEnable(GLES20.GL_BLEND);
-            GLES20.glBlendFunc(blend.srcFactor, blend.dstFactor);
-        }
+        // set blend
+        GlState.setBlend(blend.enable, blend.srcFactor, blend.dstFactor);
 
-        // enable attributes
-        for (Attribute attr : attributes.values()) {
-            GLES20.glEnableVertexAttribArray(attr.location);
-        }
+        // enable attributes, disabling the ones of the previous material
+        bindVertexState();
 
         // enable uniform texture
-        int index = 0;
-        for (Map.Entry<String, Texture> texture : textures.entrySet()) {
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + index);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getValue().getTextureId());
-            GLES20.glUniform1i(getUniformLocation(texture.getKey()), index);
-            index++;
+        for (int index = 0; index < textureList.size(); index++) {
+            GlState.bindTexture(index, textureList.get(index).getTextureId());
+            GLES20.glUniform1i(textureLocations.get(index), index);
+        }
+    }
+
+    private void bindVertexState() {
+        if (!GlCapabilities.isEs3()) {
+            GlState.setEnabledAttributes(attributeMask);
+            return;
+        }
+        if (clientArrays) {
+            GlState.bindVertexArray(0);
+            GlState.setEnabledAttributes(attributeMask);
+            return;
+        }
+        if (vertexArray[0] != 0) {
+            GlState.bindVertexArray(vertexArray[0]);
+            return;
+        }
+        GLES30.glGenVertexArrays(1, vertexArray, 0);
+        GlResourceTracker.register(GlResourceTracker.Type.VERTEX_ARRAY, vertexArray[0], 0, "material");
+        GlState.bindVertexArray(vertexArray[0]);
+        for (int i = 0; i < attributeList.size(); i++) {
+            Attribute attribute = attributeList.get(i);
+            GLES20.glEnableVertexAttribArray(attribute.location);
+            if (attribute.divisor != 0) {
+                GLES30.glVertexAttribDivisor(attribute.location, attribute.divisor);
+            }
         }
     }
 
@@ -269,20 +493,18 @@ public class Material {
      * end render
      */
     public void endRender() {
-        // disable uniform texture
-        for (int i = 0; i < textures.size(); i++) {
-            int index = GLES20.GL_TEXTURE0 + i;
-            GLES20.glActiveTexture(index);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-        }
-
-        // disable attributes
-        for (Attribute attr : attributes.values()) {
-            GLES20.glDisableVertexAttribArray(attr.location);
-        }
+        // State stays bound, the next startRender only changes what differs through GlState.
+    }
 
-        if (blend.enable) {
-            GLES20.glDisable(GLES20.GL_BLEND);
+    /**
+     * Delete the vertex array object, the program is shared and released by ProgramUtil.
+     * Must be called on the GL thread.
+     */
+    public void release() {
+        if (vertexArray[0] != 0) {
+            GlState.bindVertexArray(0);
+            GlResourceTracker.release(GlResourceTracker.Type.VERTEX_ARRAY, vertexArray[0]);
+            vertexArray[0] = 0;
         }
     }
 }
\ No newline at end of file
@@ -29,6 +29,8 @@ import java.util.Map;
  * @since 2021-06-29
  */
 public class Program {
+    private static final String ARRAY_SUFFIX = "[0]";
+
     private static class ShaderPara {
         String name; // Attribute name.
         int type; // Attribute type.
@@ -44,8 +46,23 @@ public class Program {
     private Map<String, ShaderPara> attributes;
     private Map<String, ShaderPara> uniforms;
 
-    public Program(ProgramUtil.Shader shader) {
-        program = ProgramUtil.getProgram(shader);
+    /**
+     * Constructor, compiles the variant on first use
+     *
+     * @param shader the shader
+     * @param defines variant defines, see ProgramUtil.getProgram
+     */
+    public Program(ProgramUtil.Shader shader, String... defines) {
+        this(ProgramUtil.getProgram(shader, defines));
+    }
+
+    /**
+     * Constructor, wraps a linked program and reads its active attributes and uniforms
+     *
+     * @param glProgram linked program, 0 if linking failed
+     */
+    Program(int glProgram) {
+        program = glProgram;
         if (program > 0) {
             initAttributes();
             initUniforms();
@@ -93,11 +110,7 @@ public class Program {
      * use program
      */
     public void useProgram() {
-        int[] para = new int[1];
-        GLES20.glGetIntegerv(GLES20.GL_CURRENT_PROGRAM, para, 0);
-        if (para[0] != program) {
-            GLES20.glUseProgram(program);
-        }
+        GlState.useProgram(program);
     }
 
     private void initAttributes() {
@@ -126,6 +139,10 @@ public class Program {
         for (int i = 0; i < uniformCount; i++) {
             String name = GLES20.glGetActiveUniform(program, i, sizeBuffer, typeBuffer);
             int location = GLES20.glGetUniformLocation(program, name);
+            // Arrays are reported as "name[0]", make them reachable by their plain name too.
+            if (name.endsWith(ARRAY_SUFFIX)) {
+                name = name.substring(0, name.length() - ARRAY_SUFFIX.length());
+            }
             uniforms.put(name, new ShaderPara(name, typeBuffer.get(0), location));
         }
     }
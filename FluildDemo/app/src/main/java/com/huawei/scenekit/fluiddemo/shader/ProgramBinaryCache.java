@@ -0,0 +1,313 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Description: ProgramBinaryCache
+ *
+ * Disk cache of linked program binaries, OpenGL ES 3.0 only.
+ * A binary is stored under the hash of both shader sources and of the driver identification
+ * (vendor, renderer and version), so a shader edit or a driver update simply misses.
+ * An index maps each program variant to its current key: storing a new key for a variant deletes the
+ * binary it replaces, and binaries no variant refers to are deleted when the cache is opened.
+ * A binary the driver rejects is deleted and the caller compiles from source again.
+ * File layout: binary format, binary length, binary. Index layout: one "variant TAB key" line per variant.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ProgramBinaryCache {
+    private static final String TAG = "ProgramBinaryCache";
+    private static final String DIRECTORY = "programs";
+    private static final String SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char SEPARATOR = '\0';
+    private static final String INDEX = "index";
+    private static final char INDEX_SEPARATOR = '\t';
+
+    private final File directory;
+    private final String driver;
+    // Current key of every variant stored so far.
+    private final Map<String, String> index = new HashMap<>();
+
+    /**
+     * Create the cache, must be called on the GL thread.
+     *
+     * @param cacheDir application cache directory
+     */
+    public ProgramBinaryCache(File cacheDir) {
+        directory = new File(cacheDir, DIRECTORY);
+        driver = GLES20.glGetString(GLES20.GL_VENDOR) + SEPARATOR + GLES20.glGetString(GLES20.GL_RENDERER)
+            + SEPARATOR + GLES20.glGetString(GLES20.GL_VERSION);
+        readIndex();
+        deleteUnindexed();
+    }
+
+    /**
+     * Forget the variants of shaders that no longer exist and delete their binaries.
+     *
+     * @param shaderPrefixes variant prefixes of the current shaders, see ProgramUtil
+     */
+    public void retainShaders(Collection<String> shaderPrefixes) {
+        boolean isChanged = false;
+        Iterator<Map.Entry<String, String>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (!hasPrefix(entry.getKey(), shaderPrefixes)) {
+                iterator.remove();
+                delete(new File(directory, entry.getValue() + SUFFIX));
+                isChanged = true;
+            }
+        }
+        if (isChanged) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Whether the current context can load program binaries.
+     *
+     * @return true if binaries are supported
+     */
+    public static boolean isSupported() {
+        if (!GlCapabilities.isEs3()) {
+            return false;
+        }
+        int[] formats = new int[1];
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    /**
+     * get key
+     *
+     * @param vertexSource vertex shader source
+     * @param fragmentSource fragment shader source
+     * @return cache key, null if it cannot be computed
+     */
+    public String getKey(String vertexSource, String fragmentSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            String content = vertexSource + SEPARATOR + fragmentSource + SEPARATOR + driver;
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte value : hash) {
+                key.append(String.format("%02x", value & 0xFF));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "getKey: " + HASH_ALGORITHM + " unavailable");
+            return null;
+        }
+    }
+
+    /**
+     * Creates a program from a cached binary.
+     *
+     * @param key cache key
+     * @return linked program, 0 on a miss or when the driver rejected the binary
+     */
+    public int load(String key) {
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) {
+            return 0;
+        }
+        int format;
+        ByteBuffer binary;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > file.length()) {
+                throw new IOException("bad binary length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            binary = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+            binary.put(bytes);
+            binary.position(0);
+        } catch (IOException e) {
+            Log.w(TAG, "load: unreadable " + file.getName() + ": " + e.getMessage());
+            delete(file);
+            return 0;
+        }
+
+        int program = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(program, format, binary, binary.capacity());
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            // Usually a driver update that kept its version string, compile again.
+            Log.w(TAG, "load: binary rejected " + file.getName());
+            GLES20.glDeleteProgram(program);
+            delete(file);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Ask the driver to keep the binary of a program, call before linking.
+     *
+     * @param program program to link
+     */
+    public void prepare(int program) {
+        GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+    }
+
+    /**
+     * Stores the binary of a linked program, replacing the binary stored for the variant before.
+     *
+     * @param variant program variant the key was computed for
+     * @param key cache key
+     * @param program linked program
+     */
+    public void store(String variant, String key, int program) {
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        if (length[0] <= 0) {
+            return;
+        }
+        byte[] bytes = new byte[length[0]];
+        binary.position(0);
+        binary.get(bytes);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "store: cannot create " + directory);
+            return;
+        }
+        // Written aside and renamed, so a crash never leaves a truncated binary behind.
+        File temp = new File(directory, key + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(format[0]);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "store: " + e.getMessage());
+            delete(temp);
+            return;
+        }
+        if (!temp.renameTo(new File(directory, key + SUFFIX))) {
+            delete(temp);
+            return;
+        }
+        String previous = index.put(variant, key);
+        if (previous != null && !previous.equals(key) && !index.containsValue(previous)) {
+            // The sources or the driver changed, the old binary can never be hit again.
+            delete(new File(directory, previous + SUFFIX));
+        }
+        writeIndex();
+    }
+
+    private void readIndex() {
+        File file = new File(directory, INDEX);
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(INDEX_SEPARATOR);
+                if (separator > 0) {
+                    index.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            // Unreferenced binaries are deleted next, they are compiled again.
+            Log.w(TAG, "readIndex: " + e.getMessage());
+            index.clear();
+        }
+    }
+
+    private void writeIndex() {
+        File temp = new File(directory, INDEX + TEMP_SUFFIX);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : index.entrySet()) {
+                writer.write(entry.getKey() + INDEX_SEPARATOR + entry.getValue() + '\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "writeIndex: " + e.getMessage());
+            delete(temp);
+            return;
+        }
+        if (!temp.renameTo(new File(directory, INDEX))) {
+            delete(temp);
+        }
+    }
+
+    // Binaries of older sources or drivers, and files left by an interrupted write.
+    private void deleteUnindexed() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            boolean isStale = name.endsWith(SUFFIX)
+                && !index.containsValue(name.substring(0, name.length() - SUFFIX.length()));
+            if (isStale || name.endsWith(TEMP_SUFFIX)) {
+                delete(file);
+            }
+        }
+    }
+
+    private static boolean hasPrefix(String variant, Collection<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (variant.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "cannot delete " + file.getName());
+        }
+    }
+}
@@ -21,14 +21,23 @@ import android.content.res.AssetManager;
 import android.opengl.GLES20;
 import android.util.Log;
 
-import com.huawei.scenekit.fluiddemo.util.FileManager;
+import com.huawei.scenekit.fluiddemo.util.AssetPreloader;
+import com.huawei.scenekit.fluiddemo.util.Config;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Description: ProgramUtil
  *
+ * Programs are variants of a Shader keyed by preprocessor defines, e.g. define(DEFINE_TAP_COUNT, 3),
+ * and are compiled (or loaded from the binary cache) the first time a Program asks for them.
+ * Sources may pull shared code from the shader directory with #include "File.glsl".
+ *
  * @author HUAWEI
  * @since 2021-06-29
  */
@@ -88,28 +97,43 @@ public class ProgramUtil {
      */
     public static final int FLOAT = GLES20.GL_FLOAT;
 
+    /**
+     * Draw the particle sprite on an instanced quad instead of a point.
+     */
+    public static final String DEFINE_QUAD_SPRITE = "QUAD_SPRITE";
+
+    /**
+     * Fixed Gaussian tap count, required by GaussianBlur.frag.
+     */
+    public static final String DEFINE_TAP_COUNT = "TAP_COUNT";
+
     /**
      * shader map
      */
     public static final Map<Shader, ProgramData> SHADERS =
-        new HashMap<Shader, ProgramData>(20); // 20: initialCapacity, current use IN initShaders() is 6
+        new HashMap<Shader, ProgramData>(20); // 20: initialCapacity, current use IN initShaders() is 9
 
     private static final String TAG = "ProgramManager";
-    private static final String SHADER_PATH = "shaders/glsl";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final String INCLUDE = "#include";
+    private static final String VERSION = "#version";
+    private static final int MAX_INCLUDE_DEPTH = 8;
+
+    // Linked programs by variant key, filled on first use and emptied with the context.
+    private static final Map<String, Integer> VARIANTS = new HashMap<>();
+
+    private static AssetManager assets;
+    private static ProgramBinaryCache binaryCache;
 
     private static class ProgramData {
         String vertexShaderName;
         String fragmentShaderName;
-        int glVertexShader;
-        int glFragmentShader;
-        int glProgram;
+        String[] defines;
 
-        ProgramData(String vsName, String fsName) {
+        ProgramData(String vsName, String fsName, String... defineList) {
             vertexShaderName = vsName;
             fragmentShaderName = fsName;
-            glVertexShader = -1;
-            glFragmentShader = -1;
-            glProgram = -1;
+            defines = defineList;
         }
     }
 
@@ -119,20 +143,41 @@ public class ProgramUtil {
     public enum Shader {
         NODE,
         WATER_NODE,
+        NODE_QUAD,
         TEXTURE,
         SCREEN,
-        HBLUR,
-        VBLUR,
+        GAUSSIAN_BLUR,
+        DUAL_DOWN,
+        DUAL_UP,
         DEBUG
     }
 
     private static void initShaders() {
         SHADERS.put(Shader.NODE, new ProgramData("Particle.vert", "Particle.frag"));
-        SHADERS.put(Shader.WATER_NODE, new ProgramData("WaterParticle.vert", "Particle.frag"));
+        SHADERS.put(Shader.WATER_NODE, new ProgramData("Particle.vert", "Particle.frag"));
+        SHADERS.put(Shader.NODE_QUAD, new ProgramData("ParticleQuad.vert", "Particle.frag", DEFINE_QUAD_SPRITE));
         SHADERS.put(Shader.TEXTURE, new ProgramData("Texture.vert", "Texture.frag"));
         SHADERS.put(Shader.SCREEN, new ProgramData("Screen.vert", "Screen.frag"));
-        SHADERS.put(Shader.HBLUR, new ProgramData("HBlur.vert", "Blur.frag"));
-        SHADERS.put(Shader.VBLUR, new ProgramData("VBlur.vert", "Blur.frag"));
+        SHADERS.put(Shader.GAUSSIAN_BLUR, new ProgramData("BlurQuad.vert", "GaussianBlur.frag"));
+        SHADERS.put(Shader.DUAL_DOWN, new ProgramData("BlurQuad.vert", "DualDown.frag"));
+        SHADERS.put(Shader.DUAL_UP, new ProgramData("BlurQuad.vert", "DualUp.frag"));
+        SHADERS.put(Shader.DEBUG, new ProgramData("Debug.vert", "Debug.frag"));
+    }
+
+    // Variants of a shader are keyed by this prefix followed by their sorted defines.
+    private static String getVariantPrefix(ProgramData data) {
+        return data.vertexShaderName + "|" + data.fragmentShaderName + "|";
+    }
+
+    /**
+     * Builds a define with a value.
+     *
+     * @param name define name
+     * @param value define value
+     * @return "name value"
+     */
+    public static String define(String name, int value) {
+        return name + " " + value;
     }
 
     private static int createShader(int shaderType, String shaderName, String shaderSource) {
@@ -150,43 +195,125 @@ public class ProgramUtil {
         return shader;
     }
 
-    private static void loadShader(Shader shaderType, AssetManager assetManager) {
-        ProgramData data = SHADERS.get(shaderType);
-        if (data == null) {
-            Log.e(TAG, "Invalid shader type()" + shaderType + "in loadShader");
-            return;
+    // Reads a source with its includes resolved.
+    private static String loadSource(String name, int depth) {
+        String source = AssetPreloader.getInstance().getShader(assets, Config.SHADER_PATH + "/" + name);
+        if (source == null || !source.contains(INCLUDE)) {
+            return source;
+        }
+        if (depth >= MAX_INCLUDE_DEPTH) {
+            Log.e(TAG, "Includes nested too deep in " + name);
+            return source;
         }
-        String vertexShader = FileManager.loadShader(assetManager, SHADER_PATH + "/" + data.vertexShaderName);
-        String fragmentShader = FileManager.loadShader(assetManager, SHADER_PATH + "/" + data.fragmentShaderName);
-        data.glVertexShader = createShader(GLES20.GL_VERTEX_SHADER, data.vertexShaderName, vertexShader);
-        data.glFragmentShader = createShader(GLES20.GL_FRAGMENT_SHADER, data.fragmentShaderName, fragmentShader);
+        StringBuilder builder = new StringBuilder(source.length());
+        for (String line : source.split("\n", -1)) {
+            String trimmed = line.trim();
+            int start = trimmed.indexOf('"');
+            int end = trimmed.lastIndexOf('"');
+            if (trimmed.startsWith(INCLUDE) && start >= 0 && end > start) {
+                String included = loadSource(trimmed.substring(start + 1, end), depth + 1);
+                builder.append(included == null ? "" : included);
+            } else {
+                builder.append(line);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
 
-        data.glProgram = GLES20.glCreateProgram();
-        GLES20.glAttachShader(data.glProgram, data.glVertexShader);
-        GLES20.glAttachShader(data.glProgram, data.glFragmentShader);
-        GLES20.glLinkProgram(data.glProgram);
+    // Inserts the defines at the top, after a #version line if there is one.
+    private static String addDefines(String source, TreeSet<String> defines) {
+        if (source == null || defines.isEmpty()) {
+            return source;
+        }
+        StringBuilder header = new StringBuilder();
+        for (String define : defines) {
+            header.append("#define ").append(define).append('\n');
+        }
+        int bodyStart = 0;
+        if (source.trim().startsWith(VERSION)) {
+            bodyStart = source.indexOf('\n') + 1;
+        }
+        return source.substring(0, bodyStart) + header + source.substring(bodyStart);
+    }
+
+    // Links a variant, isCached[0] tells whether it came from the binary cache.
+    private static int linkProgram(String variant, ProgramData data, TreeSet<String> defines, boolean[] isCached) {
+        String vertexShader = addDefines(loadSource(data.vertexShaderName, 0), defines);
+        String fragmentShader = addDefines(loadSource(data.fragmentShaderName, 0), defines);
+        ProgramBinaryCache cache = binaryCache;
+        String key = cache == null ? null : cache.getKey(vertexShader, fragmentShader);
+        if (key != null) {
+            int program = cache.load(key);
+            if (program > 0) {
+                isCached[0] = true;
+                return program;
+            }
+        }
+
+        int glVertexShader = createShader(GLES20.GL_VERTEX_SHADER, data.vertexShaderName, vertexShader);
+        int glFragmentShader = createShader(GLES20.GL_FRAGMENT_SHADER, data.fragmentShaderName, fragmentShader);
+
+        int glProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(glProgram, glVertexShader);
+        GLES20.glAttachShader(glProgram, glFragmentShader);
+        if (key != null) {
+            cache.prepare(glProgram);
+        }
+        GLES20.glLinkProgram(glProgram);
+        // Only flagged, they go away with the program.
+        GLES20.glDeleteShader(glVertexShader);
+        GLES20.glDeleteShader(glFragmentShader);
 
         int[] status = new int[1];
-        GLES20.glGetProgramiv(data.glProgram, GLES20.GL_LINK_STATUS, status, 0);
+        GLES20.glGetProgramiv(glProgram, GLES20.GL_LINK_STATUS, status, 0);
         if (status[0] == 0) {
             Log.e(TAG, "Could not link shaders " + data.vertexShaderName + " and " + data.fragmentShaderName);
-            Log.e(TAG, "GL log: " + GLES20.glGetShaderInfoLog(data.glProgram));
-            data.glProgram = 0;
+            Log.e(TAG, "GL log: " + GLES20.glGetProgramInfoLog(glProgram));
+            GLES20.glDeleteProgram(glProgram);
+            return 0;
+        }
+        if (key != null) {
+            cache.store(variant, key, glProgram);
         }
+        return glProgram;
     }
 
     /**
-     * load all shaders
+     * Prepare compiling for a new context, every program is compiled again on first use.
+     * Linked program binaries stored in cacheDir are reused when the context allows it.
      *
      * @param assetManager the asset manager
+     * @param cacheDir binary cache directory, null to always compile
      */
-    public static void loadAllShaders(AssetManager assetManager) {
+    public static void init(AssetManager assetManager, File cacheDir) {
         initShaders();
-        for (Map.Entry<Shader, ProgramData> entry : SHADERS.entrySet()) {
-            loadShader(entry.getKey(), assetManager);
+        VARIANTS.clear();
+        assets = assetManager;
+        binaryCache = null;
+        if (cacheDir != null && ProgramBinaryCache.isSupported()) {
+            binaryCache = new ProgramBinaryCache(cacheDir);
+            Set<String> prefixes = new HashSet<>();
+            for (ProgramData data : SHADERS.values()) {
+                prefixes.add(getVariantPrefix(data));
+            }
+            binaryCache.retainShaders(prefixes);
+        } else {
+            Log.i(TAG, "binary cache unavailable");
         }
     }
 
+    /**
+     * Delete every program variant, must be called on the GL thread.
+     */
+    public static void release() {
+        GlState.useProgram(0);
+        for (Integer program : VARIANTS.values()) {
+            GlResourceTracker.release(GlResourceTracker.Type.PROGRAM, program);
+        }
+        VARIANTS.clear();
+    }
+
     /**
      * get program
      *
@@ -194,6 +321,44 @@ public class ProgramUtil {
      * @return glProgram
      */
     public static int getProgram(Shader shader) {
-        return SHADERS.get(shader).glProgram;
+        return getProgram(shader, new String[0]);
+    }
+
+    /**
+     * Obtains a program variant, compiling it on first use. Must be called on the GL thread after init.
+     *
+     * @param shader the shader
+     * @param defines defines added to those of the shader, "NAME" or "NAME VALUE"
+     * @return glProgram, 0 if it does not compile
+     */
+    public static int getProgram(Shader shader, String... defines) {
+        ProgramData data = SHADERS.get(shader);
+        if (data == null) {
+            Log.e(TAG, "Invalid shader type()" + shader + "in getProgram");
+            return 0;
+        }
+        // Sorted, so the same set in another order is the same variant.
+        TreeSet<String> allDefines = new TreeSet<>();
+        for (String define : data.defines) {
+            allDefines.add(define);
+        }
+        for (String define : defines) {
+            allDefines.add(define);
+        }
+        String variant = getVariantPrefix(data) + allDefines;
+        Integer program = VARIANTS.get(variant);
+        if (program != null) {
+            return program;
+        }
+
+        long start = System.nanoTime();
+        boolean[] isCached = new boolean[1];
+        int glProgram = linkProgram(variant, data, allDefines, isCached);
+        long elapsed = System.nanoTime() - start;
+        VARIANTS.put(variant, glProgram);
+        GlResourceTracker.register(GlResourceTracker.Type.PROGRAM, glProgram, 0, variant);
+        Log.i(TAG, variant + (isCached[0] ? " loaded from cache in " : " compiled in ")
+            + elapsed / NANOS_PER_MILLI + " ms");
+        return glProgram;
     }
-}
\ No newline at end of file
+}
@@ -18,35 +18,59 @@ package com.huawei.scenekit.fluiddemo.shader;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
+import android.util.Log;
 
+import com.huawei.scenekit.fluiddemo.util.AssetPreloader;
 import com.huawei.scenekit.fluiddemo.util.FileManager;
+import com.huawei.scenekit.fluiddemo.util.KtxImage;
 
 /**
  * Description: Texture
  *
+ * An image asset is loaded from the KTX container next to it when the GPU supports its
+ * compressed format (ETC2, ASTC), with the stored mip chain, and decoded as a bitmap otherwise.
+ * Textures are tracked by GlResourceTracker with their GPU memory, see getByteSize and getTotalBytes.
+ *
  * @author HUAWEI
  * @since 2021-06-29
  */
 public class Texture {
+    private static final String TAG = "Texture";
+
     private static final int DEFAULT_WRAP = GLES20.GL_CLAMP_TO_EDGE;
+    private static final int RGBA_BYTES = 4;
 
     private int[] textureId = new int[1];
+    private long byteSize = 0;
 
     // Default texture.
     public Texture() {
         GLES20.glGenTextures(1, textureId, 0);
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, textureId[0], 0, "render target");
     }
 
     // Load the texture in the assets directory.
     public Texture(Context context, String assetName) {
         GLES20.glGenTextures(1, textureId, 0);
-        Bitmap bitmap = FileManager.loadBitmap(context.getAssets(), assetName);
-        loadTexture(bitmap, DEFAULT_WRAP, DEFAULT_WRAP);
-        if (bitmap != null) {
-            bitmap.recycle();
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, textureId[0], 0, assetName);
+        // Usually read or decoded on a worker while the surface was being created.
+        AssetPreloader preloader = AssetPreloader.getInstance();
+        KtxImage image = preloader.takeKtx(context.getAssets(), assetName);
+        if (image != null && GlCapabilities.isCompressedFormatSupported(image.getInternalFormat())) {
+            loadCompressedTexture(image, DEFAULT_WRAP, DEFAULT_WRAP);
+            preloader.discardBitmap(assetName);
+        } else {
+            Bitmap bitmap = preloader.takeBitmap(context.getAssets(), assetName);
+            loadTexture(bitmap, DEFAULT_WRAP, DEFAULT_WRAP);
+            if (bitmap != null) {
+                setByteSize((long) bitmap.getWidth() * bitmap.getHeight() * RGBA_BYTES);
+                bitmap.recycle();
+            }
         }
+        Log.i(TAG, assetName + ": " + byteSize / 1024 + " KB, all textures " + getTotalBytes() / 1024 + " KB");
     }
 
     /**
@@ -57,7 +81,7 @@ public class Texture {
      * @param wrapT the wrap dst
      */
     private final void loadTexture(Bitmap bitmap, int wrapS, int wrapT) {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+        GlState.bindTexture(0, textureId[0]);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, wrapS);
@@ -65,8 +89,84 @@ public class Texture {
         GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
     }
 
+    /**
+     * Uploads a compressed image with its mip chain.
+     *
+     * @param image the image
+     * @param wrapS the wrap src
+     * @param wrapT the wrap dst
+     */
+    private void loadCompressedTexture(KtxImage image, int wrapS, int wrapT) {
+        GlState.bindTexture(0, textureId[0]);
+        int minFilter = image.getLevelCount() > 1 ? GLES20.GL_LINEAR_MIPMAP_NEAREST : GLES20.GL_LINEAR;
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, wrapS);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, wrapT);
+        for (int level = 0; level < image.getLevelCount(); level++) {
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, image.getInternalFormat(),
+                image.getLevelWidth(level), image.getLevelHeight(level), 0, image.getLevel(level).remaining(),
+                image.getLevel(level));
+        }
+        setByteSize(image.getByteSize());
+    }
+
+    /**
+     * Record the GPU memory of the texture, for textures whose storage is allocated by the caller.
+     *
+     * @param bytes storage size in bytes
+     */
+    public void setByteSize(long bytes) {
+        byteSize = bytes;
+        GlResourceTracker.setBytes(GlResourceTracker.Type.TEXTURE, textureId[0], bytes);
+    }
+
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Obtains the GPU memory an image asset will take once loaded, before loading it.
+     * Without a preloaded compressed version this is the size of the decoded bitmap.
+     *
+     * @param context the context
+     * @param assetName image asset path
+     * @return size in bytes, 0 if the image cannot be read
+     */
+    public static long getByteSize(Context context, String assetName) {
+        AssetPreloader preloader = AssetPreloader.getInstance();
+        KtxImage image = preloader.peekKtx(assetName);
+        if (image != null && GlCapabilities.isCompressedFormatSupported(image.getInternalFormat())) {
+            return image.getByteSize();
+        }
+        Bitmap bitmap = preloader.peekBitmap(assetName);
+        if (bitmap != null) {
+            return (long) bitmap.getWidth() * bitmap.getHeight() * RGBA_BYTES;
+        }
+        BitmapFactory.Options bounds = FileManager.loadBitmapBounds(context.getAssets(), assetName);
+        return bounds.outWidth > 0 && bounds.outHeight > 0 ? (long) bounds.outWidth * bounds.outHeight * RGBA_BYTES : 0;
+    }
+
+    /**
+     * Obtains the GPU memory of all live textures.
+     *
+     * @return size in bytes
+     */
+    public static long getTotalBytes() {
+        return GlResourceTracker.getBytes(GlResourceTracker.Type.TEXTURE);
+    }
+
     // Return the texture ID.
     public int getTextureId() {
         return textureId[0];
     }
+
+    /**
+     * Delete the texture, must be called on the GL thread.
+     */
+    public void release() {
+        GlState.forgetTexture(textureId[0]);
+        GlResourceTracker.release(GlResourceTracker.Type.TEXTURE, textureId[0]);
+        byteSize = 0;
+    }
 }
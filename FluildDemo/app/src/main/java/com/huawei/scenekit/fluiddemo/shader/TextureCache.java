@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Description: TextureCache
+ *
+ * Keeps uploaded textures by asset name within a GPU memory budget, evicting the least recently
+ * used ones. The most recently used texture is never evicted, it is the one being drawn.
+ * Must only be used on the GL thread, a new context needs a new cache.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class TextureCache {
+    private static final String TAG = "TextureCache";
+
+    private final long budget;
+    // Access order: iteration starts with the least recently used texture.
+    private final LinkedHashMap<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    /**
+     * Constructor
+     *
+     * @param budgetBytes GPU memory the cached textures may use
+     */
+    public TextureCache(long budgetBytes) {
+        budget = budgetBytes;
+    }
+
+    /**
+     * Obtains a cached texture and marks it as the most recently used.
+     *
+     * @param name asset name
+     * @return the texture, null if it is not cached
+     */
+    public Texture get(String name) {
+        return textures.get(name);
+    }
+
+    /**
+     * Evict textures until one of the given size fits in the budget next to the most recently used one,
+     * call before uploading a texture that will be put in the cache.
+     *
+     * @param incomingBytes expected size of the next texture
+     */
+    public void reserve(long incomingBytes) {
+        Iterator<Map.Entry<String, Texture>> iterator = textures.entrySet().iterator();
+        while (usedBytes + incomingBytes > budget && textures.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Texture> eldest = iterator.next();
+            Texture texture = eldest.getValue();
+            iterator.remove();
+            usedBytes -= texture.getByteSize();
+            texture.release();
+            Log.d(TAG, "evicted " + eldest.getKey() + ", " + usedBytes / 1024 + " KB in use");
+        }
+    }
+
+    /**
+     * Adds an uploaded texture as the most recently used one, evicting others over the budget.
+     *
+     * @param name asset name
+     * @param texture the texture, owned by the cache from now on
+     */
+    public void put(String name, Texture texture) {
+        Texture previous = textures.put(name, texture);
+        if (previous != null && previous != texture) {
+            usedBytes -= previous.getByteSize();
+            previous.release();
+        }
+        usedBytes += texture.getByteSize();
+        reserve(0);
+        if (usedBytes > budget) {
+            Log.w(TAG, name + " alone is over the budget: " + usedBytes + " > " + budget);
+        }
+    }
+
+    /**
+     * Whether a texture is cached, without marking it as used.
+     *
+     * @param name asset name
+     * @return true if cached
+     */
+    public boolean contains(String name) {
+        return textures.containsKey(name);
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Release every texture, must be called on the GL thread.
+     */
+    public void clear() {
+        for (Texture texture : textures.values()) {
+            texture.release();
+        }
+        textures.clear();
+        usedBytes = 0;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Description: VertexBuffer
+ *
+ * GPU vertex buffer written as a ring. Each write goes after the previous one, so the GPU can
+ * still read earlier frames while new data is uploaded. When the ring is full the storage is
+ * orphaned: the driver hands out fresh memory and frees the old one once the GPU is done with it.
+ * On OpenGL ES 3.0 byte data is written through an unsynchronized glMapBufferRange, which is safe
+ * because a range is never rewritten before the ring wraps and orphans the storage.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class VertexBuffer {
+    private static final int ALIGNMENT = 4;
+
+    private static final int MAP_FLAGS = GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_RANGE_BIT
+        | GLES30.GL_MAP_UNSYNCHRONIZED_BIT;
+
+    private final int[] bufferId = new int[1];
+    private final int capacity;
+    private final int usage;
+    private int writeOffset = 0;
+
+    /**
+     * Create the buffer, must be called on the GL thread.
+     *
+     * @param capacity ring size in bytes
+     */
+    public VertexBuffer(int capacity) {
+        this(capacity, null, GLES20.GL_STREAM_DRAW);
+    }
+
+    private VertexBuffer(int capacity, Buffer data, int usage) {
+        this.capacity = capacity;
+        this.usage = usage;
+        GLES20.glGenBuffers(1, bufferId, 0);
+        GlResourceTracker.register(GlResourceTracker.Type.BUFFER, bufferId[0], capacity,
+            usage == GLES20.GL_STATIC_DRAW ? "static vertices" : "vertex ring");
+        bind();
+        if (data != null) {
+            data.position(0);
+        }
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, capacity, data, usage);
+        writeOffset = data == null ? 0 : capacity;
+    }
+
+    /**
+     * Create a buffer holding data that never changes, must be called on the GL thread.
+     *
+     * @param data vertex data, read from position 0
+     * @param size bytes to copy
+     * @return the buffer
+     */
+    public static VertexBuffer createStatic(Buffer data, int size) {
+        return new VertexBuffer(size, data, GLES20.GL_STATIC_DRAW);
+    }
+
+    /**
+     * Appends data to the ring.
+     *
+     * @param data source data, read from position 0
+     * @param size bytes to write
+     * @return byte offset of the data in the buffer
+     */
+    public int stream(Buffer data, int size) {
+        bind();
+        if (size <= 0) {
+            return writeOffset;
+        }
+        if (writeOffset + size > capacity) {
+            orphan();
+        }
+        int offset = writeOffset;
+        write(data, offset, size);
+        writeOffset = (offset + size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        return offset;
+    }
+
+    /**
+     * Replaces the content with new storage, for data that is rewritten only occasionally.
+     *
+     * @param data source data, read from position 0
+     * @param size bytes to write
+     */
+    public void replace(Buffer data, int size) {
+        bind();
+        orphan();
+        if (size > 0) {
+            write(data, 0, size);
+            writeOffset = size;
+        }
+    }
+
+    /**
+     * Bind to GL_ARRAY_BUFFER.
+     */
+    public void bind() {
+        GlState.bindArrayBuffer(bufferId[0]);
+    }
+
+    public int getBufferId() {
+        return bufferId[0];
+    }
+
+    /**
+     * Delete the buffer, must be called on the GL thread.
+     */
+    public void release() {
+        GlState.bindArrayBuffer(0);
+        GlResourceTracker.release(GlResourceTracker.Type.BUFFER, bufferId[0]);
+    }
+
+    private void write(Buffer data, int offset, int size) {
+        if (GlCapabilities.isEs3() && data instanceof ByteBuffer) {
+            Buffer mapped = GLES30.glMapBufferRange(GLES20.GL_ARRAY_BUFFER, offset, size, MAP_FLAGS);
+            if (mapped instanceof ByteBuffer) {
+                ByteBuffer source = (ByteBuffer) data;
+                source.clear();
+                source.limit(size);
+                ((ByteBuffer) mapped).put(source);
+                source.clear();
+                if (GLES30.glUnmapBuffer(GLES20.GL_ARRAY_BUFFER)) {
+                    return;
+                }
+                // The storage was lost while mapped, upload it the ES 2 way.
+            }
+        }
+        data.position(0);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset, size, data);
+    }
+
+    private void orphan() {
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, capacity, null, usage);
+        writeOffset = 0;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: AssetPreloader
+ *
+ * Reads shader sources and decodes bitmaps on a worker pool as soon as an activity starts,
+ * so the GL thread only waits for what is not ready yet and then uploads it.
+ * Assets that were never requested through start are loaded synchronously as before.
+ * Shader sources are kept for context re-creation, bitmaps are handed over once because the
+ * texture recycles them after upload. More textures can be queued later with preloadTexture,
+ * idle workers exit after a few seconds.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class AssetPreloader {
+    private static final String TAG = "AssetPreloader";
+    private static final int MAX_WORKERS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final String[] BITMAPS = {Config.DEFAULT_TEXTURE_NAME, Config.BLUR_TEXTURE_NAME};
+
+    private static final AssetPreloader INSTANCE = new AssetPreloader();
+
+    private final Map<String, Future<String>> shaders = new ConcurrentHashMap<>();
+    private final Map<String, Future<Bitmap>> bitmaps = new ConcurrentHashMap<>();
+    private final Map<String, Future<KtxImage>> ktxImages = new ConcurrentHashMap<>();
+    // Time spent reading or decoding each asset, wherever it happened.
+    private final Map<String, Long> loadNanos = new ConcurrentHashMap<>();
+    private boolean started = false;
+    private ThreadPoolExecutor executor;
+
+    private AssetPreloader() {
+    }
+
+    public static AssetPreloader getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start loading every shader source and texture on the worker pool, later calls do nothing.
+     *
+     * @param assetManager the asset manager
+     */
+    public synchronized void start(AssetManager assetManager) {
+        if (started) {
+            return;
+        }
+        started = true;
+        // Textures first, they take the longest.
+        for (String name : BITMAPS) {
+            preloadTexture(assetManager, name);
+        }
+        ThreadPoolExecutor pool = getExecutor();
+        try {
+            String[] names = assetManager.list(Config.SHADER_PATH);
+            for (int i = 0; names != null && i < names.length; i++) {
+                String path = Config.SHADER_PATH + "/" + names[i];
+                shaders.put(path, pool.submit(() -> readShader(assetManager, path)));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "start: cannot list " + Config.SHADER_PATH);
+        }
+    }
+
+    /**
+     * Queue a texture for reading and decoding, does nothing if it is already queued and not taken.
+     *
+     * @param assetManager the asset manager
+     * @param path image asset path
+     */
+    public synchronized void preloadTexture(AssetManager assetManager, String path) {
+        if (bitmaps.containsKey(path)) {
+            return;
+        }
+        // A bitmap is only decoded when there is no compressed version. The ktx task is queued
+        // first, so the bitmap task waiting for it cannot deadlock the pool.
+        ThreadPoolExecutor pool = getExecutor();
+        Future<KtxImage> ktx = pool.submit(() -> readKtx(assetManager, path));
+        ktxImages.put(path, ktx);
+        bitmaps.put(path, pool.submit(() -> ktx.get() == null ? readBitmap(assetManager, path) : null));
+    }
+
+    /**
+     * Whether a queued texture can be taken without waiting.
+     *
+     * @param path image asset path
+     * @return true once both the ktx read and the bitmap decode are done
+     */
+    public boolean isTextureReady(String path) {
+        Future<KtxImage> ktx = ktxImages.get(path);
+        Future<Bitmap> bitmap = bitmaps.get(path);
+        return ktx != null && ktx.isDone() && bitmap != null && bitmap.isDone();
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int workers = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+            executor = new ThreadPoolExecutor(workers, workers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Obtains a shader source, waiting for the worker if it is still being read.
+     *
+     * @param assetManager the asset manager
+     * @param path asset path
+     * @return shader source, null if it cannot be read
+     */
+    public String getShader(AssetManager assetManager, String path) {
+        String source = await(shaders.get(path), path);
+        return source != null ? source : readShader(assetManager, path);
+    }
+
+    /**
+     * Takes a decoded bitmap, waiting for the worker if it is still decoding.
+     * The caller owns the bitmap and should recycle it after upload.
+     *
+     * @param assetManager the asset manager
+     * @param path asset path
+     * @return bitmap, null if it cannot be decoded
+     */
+    public Bitmap takeBitmap(AssetManager assetManager, String path) {
+        Bitmap bitmap = await(bitmaps.remove(path), path);
+        return bitmap != null ? bitmap : readBitmap(assetManager, path);
+    }
+
+    /**
+     * Drop the bitmap of an image that was uploaded from its compressed version.
+     *
+     * @param path image asset path
+     */
+    public void discardBitmap(String path) {
+        Future<Bitmap> future = bitmaps.remove(path);
+        if (future == null || !future.isDone()) {
+            // Still waiting for the ktx read, it finds the container and decodes nothing.
+            return;
+        }
+        Bitmap bitmap = await(future, path);
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Takes the compressed version of an image, read from the KTX container next to it.
+     *
+     * @param assetManager the asset manager
+     * @param path image asset path
+     * @return the image, null if there is no compressed version
+     */
+    public KtxImage takeKtx(AssetManager assetManager, String path) {
+        Future<KtxImage> future = ktxImages.remove(path);
+        return future != null ? await(future, KtxImage.getKtxPath(path)) : readKtx(assetManager, path);
+    }
+
+    /**
+     * Obtains the compressed version of a queued image without taking it.
+     *
+     * @param path image asset path
+     * @return the image, null if it is not read yet or there is no compressed version
+     */
+    public KtxImage peekKtx(String path) {
+        return peek(ktxImages.get(path));
+    }
+
+    /**
+     * Obtains the decoded bitmap of a queued image without taking it.
+     *
+     * @param path image asset path
+     * @return bitmap, null if it is not decoded yet or was not needed
+     */
+    public Bitmap peekBitmap(String path) {
+        return peek(bitmaps.get(path));
+    }
+
+    /**
+     * Obtains the time spent reading or decoding an asset.
+     *
+     * @param path asset path
+     * @return milliseconds, -1 if the asset was not loaded yet
+     */
+    public long getLoadTime(String path) {
+        Long nanos = loadNanos.get(path);
+        return nanos == null ? -1 : nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Obtains the load time of every asset loaded so far.
+     *
+     * @return asset path to milliseconds
+     */
+    public Map<String, Long> getLoadTimes() {
+        Map<String, Long> times = new ConcurrentHashMap<>();
+        for (Map.Entry<String, Long> entry : loadNanos.entrySet()) {
+            times.put(entry.getKey(), entry.getValue() / NANOS_PER_MILLI);
+        }
+        return times;
+    }
+
+    private <T> T await(Future<T> future, String path) {
+        if (future == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            T result = future.get();
+            long waited = System.nanoTime() - start;
+            Log.d(TAG, path + ": loaded in " + getLoadTime(path) + " ms, waited " + waited / NANOS_PER_MILLI + " ms");
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, path + ": preload failed, " + e.getCause());
+        }
+        return null;
+    }
+
+    private static <T> T peek(Future<T> future) {
+        if (future == null || !future.isDone()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Reported when the result is taken.
+            Log.d(TAG, "peek: " + e.getCause());
+        }
+        return null;
+    }
+
+    private String readShader(AssetManager assetManager, String path) {
+        long start = System.nanoTime();
+        String source = FileManager.loadShader(assetManager, path);
+        loadNanos.put(path, System.nanoTime() - start);
+        return source;
+    }
+
+    private KtxImage readKtx(AssetManager assetManager, String path) {
+        String ktxPath = KtxImage.getKtxPath(path);
+        long start = System.nanoTime();
+        KtxImage image = FileManager.loadKtx(assetManager, ktxPath);
+        if (image != null) {
+            loadNanos.put(ktxPath, System.nanoTime() - start);
+        }
+        return image;
+    }
+
+    private Bitmap readBitmap(AssetManager assetManager, String path) {
+        long start = System.nanoTime();
+        Bitmap bitmap = FileManager.loadBitmap(assetManager, path);
+        loadNanos.put(path, System.nanoTime() - start);
+        return bitmap;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
+
+/**
+ * Description: ColorCache
+ *
+ * Last particle colors read from the world, with a generation that changes whenever they do.
+ * Colors are read again when groups change. While the world holds MIX_COLOR particles they are read
+ * on every step too, blending shows on the next frame, but the generation only changes when a color
+ * did, so settled water is not uploaded again. Without mixing particles the copy is skipped.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ColorCache {
+    private byte[] colors = new byte[ParticleSnapshot.COLOR_STRIDE * Config.MAX_NODE_COUNT];
+    private byte[] scratch = new byte[ParticleSnapshot.COLOR_STRIDE * Config.MAX_NODE_COUNT];
+    private int particleCount = -1;
+    private int groupGeneration = -1;
+    private int generation = 0;
+
+    /**
+     * Refresh the colors if they may have changed. The caller must hold the world lock.
+     *
+     * @param system the particle system
+     * @param count particle count
+     * @param worldGroupGeneration WorldManager group generation
+     * @param isColorMixing whether the world holds MIX_COLOR particles, see WorldManager.hasColorMixing
+     */
+    public void update(ParticleSystem system, int count, int worldGroupGeneration, boolean isColorMixing) {
+        if (worldGroupGeneration != groupGeneration || count != particleCount) {
+            system.copyColorBuffer(count, colors);
+            particleCount = count;
+            groupGeneration = worldGroupGeneration;
+            generation++;
+            return;
+        }
+        if (!isColorMixing) {
+            return;
+        }
+        system.copyColorBuffer(count, scratch);
+        if (!equals(scratch, colors, count * ParticleSnapshot.COLOR_STRIDE)) {
+            byte[] swap = colors;
+            colors = scratch;
+            scratch = swap;
+            generation++;
+        }
+    }
+
+    public byte[] getColors() {
+        return colors;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    private static boolean equals(byte[] first, byte[] second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (first[i] != second[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
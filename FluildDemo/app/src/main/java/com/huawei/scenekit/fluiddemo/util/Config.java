@@ -32,15 +32,25 @@ import java.nio.FloatBuffer;
  */
 public class Config {
     /**
-     * EGL_CONTEXT_VERSION
+     * EGL_CONTEXT_VERSION, the OpenGL ES version requested first.
      */
-    public static final int EGL_CONTEXT_VERSION = 2;
+    public static final int EGL_CONTEXT_VERSION = 3;
+
+    /**
+     * OpenGL ES version used when EGL_CONTEXT_VERSION is not supported.
+     */
+    public static final int EGL_FALLBACK_CONTEXT_VERSION = 2;
 
     /**
      * Rendering frame rate.
      */
     public static final float TIME_INTERVAL = 1 / 60f;
 
+    /**
+     * Max simulation steps taken to catch up in one iteration, the rest of the backlog is dropped.
+     */
+    public static final int MAX_SUB_STEPS = 4;
+
     /**
      * VELOCITY_LOOP
      */
@@ -56,6 +66,41 @@ public class Config {
      */
     public static final int PARTICLE_LOOP = 5;
 
+    /**
+     * Frames between render statistics log lines.
+     */
+    public static final int STATS_LOG_FRAMES = 300;
+
+    /**
+     * Blur quality tier used until one is selected, see BlurConfig.getTier.
+     */
+    public static final int DEFAULT_BLUR_TIER = 2;
+
+    /**
+     * Whether QualityGovernor may lower quality tiers to hold Config.TARGET_FRAME_NANOS.
+     */
+    public static final boolean ADAPTIVE_QUALITY = true;
+
+    /**
+     * Quality tier used at start, see QualityTier.getTier.
+     */
+    public static final int DEFAULT_QUALITY_TIER = 2;
+
+    /**
+     * Particles moving less than this, in world units per step, count as at rest.
+     */
+    public static final float IDLE_DISPLACEMENT = 0.0005f;
+
+    /**
+     * Steps all particles must stay at rest before simulation and rendering stop.
+     */
+    public static final int IDLE_STEPS = 60;
+
+    /**
+     * Gravity change, in world gravity units, that wakes a fluid at rest.
+     */
+    public static final float GRAVITY_WAKE_DELTA = 5.f;
+
     /**
      * Particle radius.
      */
@@ -66,6 +111,27 @@ public class Config {
      */
     public static final int MAX_NODE_COUNT = 5000;
 
+    /**
+     * Upload particles as interleaved 16 bit positions and weights instead of separate float streams.
+     */
+    public static final boolean PACKED_PARTICLE_FORMAT = true;
+
+    /**
+     * Draw particles as instanced quads instead of point sprites, OpenGL ES 3.0 only.
+     */
+    public static final boolean INSTANCED_PARTICLES = false;
+
+    /**
+     * Alternate point sprites and instanced quads and log the frame cost of each, OpenGL ES 3.0 only.
+     * Adaptive quality is off meanwhile, so both paths are measured at the same settings.
+     */
+    public static final boolean BENCHMARK_PARTICLE_PATHS = false;
+
+    /**
+     * Sprite diameter relative to the particle diameter, the sprite texture fades out towards its edge.
+     */
+    public static final float PARTICLE_SPRITE_SCALE = 1.2f;
+
     /**
      * MAX_NODE_GROUP_COUNT
      */
@@ -87,9 +153,30 @@ public class Config {
     public static float WORLD_HEIGHT = DEFAULT_WORLD_HEIGHT;
 
     /**
-     * FB_SIZE
+     * Offscreen particle surfaces are the viewport size times this scale.
+     */
+    public static final float OFFSCREEN_SCALE = 0.25f;
+
+    /**
+     * Lowest scale the resolution controller may pick.
+     */
+    public static final float MIN_OFFSCREEN_SCALE = 0.125f;
+
+    /**
+     * Highest scale the resolution controller may pick.
+     */
+    public static final float MAX_OFFSCREEN_SCALE = 0.5f;
+
+    /**
+     * Frame time the resolution controller holds, in nanoseconds.
      */
-    public static final int FB_SIZE = 256;
+    public static final long TARGET_FRAME_NANOS = 16666667L;
+
+    /**
+     * Longer side of the offscreen surface the blur kernels were tuned for. The Gaussian blur runs at half
+     * this size whatever the surface, the dual filter adds a level per doubling so the water keeps its shape.
+     */
+    public static final int BLUR_REFERENCE_SIZE = 256;
 
     /**
      * THICKNESS
@@ -116,6 +203,11 @@ public class Config {
      */
     public static final float OTHER_ALPHA = 0.8f;
 
+    /**
+     * Asset directory of the shader sources.
+     */
+    public static final String SHADER_PATH = "shaders/glsl";
+
     /**
      * BLUR_TEXTURE_NAME
      */
@@ -126,6 +218,19 @@ public class Config {
      */
     public static final String DEFAULT_TEXTURE_NAME = "textures/canvas.jpg";
 
+    /**
+     * Backgrounds the canvas cycles through, starting with DEFAULT_TEXTURE_NAME.
+     */
+    public static final String[] CANVAS_TEXTURE_NAMES = {
+        DEFAULT_TEXTURE_NAME, "textures/canvas1.jpg", "textures/canvas2.jpg", "textures/canvas3.jpg",
+        "textures/canvas4.jpg", "textures/canvas5.jpg"
+    };
+
+    /**
+     * GPU memory the cached backgrounds may use, three uncompressed 1000 x 1000 backgrounds.
+     */
+    public static final long CANVAS_TEXTURE_BUDGET = 12L * 1024 * 1024;
+
     /**
      * MATRIX4
      */
@@ -155,6 +260,11 @@ public class Config {
      */
     public static final int QUAD_VERTEX_STRIDE = QUAD_VERTEX.length / 4 * 4;
 
+    /**
+     * Byte offset of the texture coordinate in a quad vertex.
+     */
+    public static final int QUAD_UV_OFFSET = 3 * 4;
+
     static {
         QUAD_VERTEX_BUFFER = ByteBuffer.allocateDirect(QUAD_VERTEX.length * 4).order(
             ByteOrder.nativeOrder()).asFloatBuffer();
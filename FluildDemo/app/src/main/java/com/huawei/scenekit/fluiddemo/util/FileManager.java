@@ -75,6 +75,72 @@ public final class FileManager {
         return content;
     }
 
+    /**
+     * load a compressed KTX image
+     *
+     * @param am asset manager
+     * @param fileName file name
+     * @return the image, null if the asset does not exist or is not a compressed 2D KTX image
+     */
+    public static KtxImage loadKtx(AssetManager am, String fileName) {
+        KtxImage image = null;
+        InputStream inStream = null;
+
+        try {
+            inStream = am.open(fileName);
+        } catch (IOException e) {
+            // No compressed version of this asset.
+            return null;
+        }
+        try {
+            image = KtxImage.read(inStream);
+        } catch (IOException e) {
+            Log.e("fileManager", "loadKtx: " + fileName + ": " + e.getMessage());
+        } finally {
+            try {
+                inStream.close();
+            } catch (IOException e) {
+                Log.e("fileManager", "loadKtx: error closing input stream");
+                e.printStackTrace();
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Read the size of a bitmap without decoding its pixels.
+     *
+     * @param am asset manager
+     * @param fileName file name
+     * @return options holding outWidth and outHeight, -1 if the image cannot be read
+     */
+    public static BitmapFactory.Options loadBitmapBounds(AssetManager am, String fileName) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.outWidth = -1;
+        options.outHeight = -1;
+        InputStream inStream = null;
+
+        try {
+            inStream = am.open(fileName);
+            BitmapFactory.decodeStream(inStream, null, options);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (inStream != null) {
+                try {
+                    inStream.close();
+                } catch (IOException e) {
+                    Log.e("fileManager", "loadBitmapBounds: error closing input stream");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return options;
+    }
+
     /**
      * load bitmap
      *
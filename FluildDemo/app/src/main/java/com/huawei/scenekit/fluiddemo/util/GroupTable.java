@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import com.huawei.hms.scene.sdk.fluid.ParticleGroup;
+import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
+
+/**
+ * Description: GroupTable
+ *
+ * Particle ranges and flags of the particle groups, with a generation that changes whenever
+ * they are rebuilt. The group list is only walked when groups were added or deleted, or when
+ * the particle count changed, which is when particles move in the buffer or groups are merged.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class GroupTable {
+    private final int[] offsets = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] counts = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] flags = new int[Config.MAX_NODE_GROUP_COUNT];
+    private int groupCount = 0;
+    private int particleCount = -1;
+    private int groupGeneration = -1;
+    private int generation = 0;
+
+    /**
+     * Rebuild the table if the groups may have changed. The caller must hold the world lock.
+     *
+     * @param system the particle system
+     * @param count particle count
+     * @param worldGroupGeneration WorldManager group generation
+     */
+    public void update(ParticleSystem system, int count, int worldGroupGeneration) {
+        if (worldGroupGeneration == groupGeneration && count == particleCount) {
+            return;
+        }
+        groupCount = 0;
+        for (ParticleGroup group : system.getParticleGroupList()) {
+            if (groupCount >= Config.MAX_NODE_GROUP_COUNT) {
+                break;
+            }
+            offsets[groupCount] = group.getParticleBufferIndex();
+            counts[groupCount] = group.getParticleCount();
+            flags[groupCount] = group.getGroupFlags();
+            groupCount++;
+        }
+        particleCount = count;
+        groupGeneration = worldGroupGeneration;
+        generation++;
+    }
+
+    /**
+     * Copies the table into arrays of at least MAX_NODE_GROUP_COUNT entries.
+     *
+     * @param groupOffsets receives the index of the first particle of each group
+     * @param groupCounts receives the particle count of each group
+     * @param groupFlags receives the flags of each group
+     * @return group count
+     */
+    public int copyTo(int[] groupOffsets, int[] groupCounts, int[] groupFlags) {
+        System.arraycopy(offsets, 0, groupOffsets, 0, groupCount);
+        System.arraycopy(counts, 0, groupCounts, 0, groupCount);
+        System.arraycopy(flags, 0, groupFlags, 0, groupCount);
+        return groupCount;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+/**
+ * Description: IdleDetector
+ *
+ * Decides when the fluid has settled: every particle moved less than Config.IDLE_DISPLACEMENT
+ * per step for Config.IDLE_STEPS steps in a row. Gravity changes larger than
+ * Config.GRAVITY_WAKE_DELTA from the gravity at rest wake it again.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class IdleDetector {
+    private final Object lock = new Object();
+    private int quietSteps = 0;
+    private boolean idle = false;
+    private boolean hasGravity = false;
+    private float restGravityX = 0;
+    private float restGravityY = 0;
+
+    /**
+     * Account for one simulation step.
+     *
+     * @param maxDisplacement largest distance a particle moved during the step
+     * @return true if the fluid just became idle
+     */
+    public boolean onStep(float maxDisplacement) {
+        synchronized (lock) {
+            if (idle) {
+                return false;
+            }
+            quietSteps = maxDisplacement < Config.IDLE_DISPLACEMENT ? quietSteps + 1 : 0;
+            if (quietSteps < Config.IDLE_STEPS) {
+                return false;
+            }
+            idle = true;
+            quietSteps = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Account for a new gravity.
+     *
+     * @param gravityX gravity x
+     * @param gravityY gravity y
+     * @return true if the change is large enough to wake the fluid
+     */
+    public boolean onGravity(float gravityX, float gravityY) {
+        synchronized (lock) {
+            if (!idle || !hasGravity) {
+                // Follow the gravity while awake, so the reference is the gravity at rest.
+                restGravityX = gravityX;
+                restGravityY = gravityY;
+                hasGravity = true;
+                return false;
+            }
+            float deltaX = gravityX - restGravityX;
+            float deltaY = gravityY - restGravityY;
+            return deltaX * deltaX + deltaY * deltaY > Config.GRAVITY_WAKE_DELTA * Config.GRAVITY_WAKE_DELTA;
+        }
+    }
+
+    /**
+     * Leave the idle state.
+     */
+    public void wake() {
+        synchronized (lock) {
+            idle = false;
+            quietSteps = 0;
+        }
+    }
+
+    public boolean isIdle() {
+        synchronized (lock) {
+            return idle;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Description: KtxImage
+ *
+ * A compressed 2D image read from a KTX 1.1 container, with its whole mip chain.
+ * Only the layout is checked here, whether the GPU can sample the format is decided at upload.
+ * Only depends on java.nio, so it can run on any JVM.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class KtxImage {
+    /**
+     * File extension of KTX containers.
+     */
+    public static final String EXTENSION = ".ktx";
+
+    private static final byte[] IDENTIFIER = {
+        (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+
+    private static final int ENDIANNESS = 0x04030201;
+
+    private static final int HEADER_SIZE = IDENTIFIER.length + 13 * 4;
+
+    private static final int READ_CHUNK = 16 * 1024;
+
+    private final int internalFormat;
+    private final int width;
+    private final int height;
+    private final ByteBuffer[] levels;
+
+    private KtxImage(int internalFormat, int width, int height, ByteBuffer[] levels) {
+        this.internalFormat = internalFormat;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Obtains the path of the KTX container stored next to an image asset.
+     *
+     * @param path image path, e.g. textures/canvas.jpg
+     * @return path with the extension replaced, e.g. textures/canvas.ktx
+     */
+    public static String getKtxPath(String path) {
+        int dot = path.lastIndexOf('.');
+        int slash = path.lastIndexOf('/');
+        return (dot > slash ? path.substring(0, dot) : path) + EXTENSION;
+    }
+
+    /**
+     * Reads a container. The stream is not closed.
+     *
+     * @param in container data
+     * @return the image
+     * @throws IOException if the data is not a compressed 2D KTX image
+     */
+    public static KtxImage read(InputStream in) throws IOException {
+        ByteBuffer data = readAll(in);
+        if (data.remaining() < HEADER_SIZE) {
+            throw new IOException("truncated header");
+        }
+        for (byte value : IDENTIFIER) {
+            if (data.get() != value) {
+                throw new IOException("not a KTX 1.1 container");
+            }
+        }
+        // The writer's byte order, the endianness field reads back as ENDIANNESS in it.
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(data.position()) != ENDIANNESS) {
+            data.order(ByteOrder.BIG_ENDIAN);
+        }
+        data.getInt(); // endianness
+        int glType = data.getInt();
+        data.getInt(); // glTypeSize
+        data.getInt(); // glFormat
+        int internalFormat = data.getInt();
+        data.getInt(); // glBaseInternalFormat
+        int width = data.getInt();
+        int height = data.getInt();
+        int depth = data.getInt();
+        int arrayElements = data.getInt();
+        int faces = data.getInt();
+        int levelCount = Math.max(1, data.getInt());
+        int keyValueBytes = data.getInt();
+        if (glType != 0) {
+            throw new IOException("not compressed");
+        }
+        if (width <= 0 || height <= 0 || depth > 1 || arrayElements > 0 || faces != 1) {
+            throw new IOException("not a 2D texture");
+        }
+        skip(data, keyValueBytes);
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            if (data.remaining() < 4) {
+                throw new IOException("truncated level " + i);
+            }
+            int size = data.getInt();
+            if (size <= 0 || size > data.remaining()) {
+                throw new IOException("bad size of level " + i);
+            }
+            ByteBuffer level = data.slice();
+            level.limit(size);
+            levels[i] = level;
+            // Levels are padded to 4 bytes, the padding of the last one may be left out.
+            skip(data, Math.min((size + 3) & ~3, data.remaining()));
+        }
+        return new KtxImage(internalFormat, width, height, levels);
+    }
+
+    public int getInternalFormat() {
+        return internalFormat;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * get level width
+     *
+     * @param level mip level
+     * @return width in pixels
+     */
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    /**
+     * get level height
+     *
+     * @param level mip level
+     * @return height in pixels
+     */
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * get level data
+     *
+     * @param level mip level
+     * @return compressed blocks, position 0
+     */
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Obtains the size of the whole mip chain, which is also its size in GPU memory.
+     *
+     * @return size in bytes
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (ByteBuffer level : levels) {
+            size += level.remaining();
+        }
+        return size;
+    }
+
+    private static void skip(ByteBuffer data, int count) throws IOException {
+        if (count < 0 || count > data.remaining()) {
+            throw new IOException("truncated data");
+        }
+        data.position(data.position() + count);
+    }
+
+    // GL reads compressed data from direct buffers only.
+    private static ByteBuffer readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), READ_CHUNK));
+        byte[] chunk = new byte[READ_CHUNK];
+        int count;
+        while ((count = in.read(chunk)) != -1) {
+            out.write(chunk, 0, count);
+        }
+        byte[] bytes = out.toByteArray();
+        ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+        data.put(bytes);
+        data.flip();
+        return data;
+    }
+}
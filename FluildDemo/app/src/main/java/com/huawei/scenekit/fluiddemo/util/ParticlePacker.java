@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: ParticlePacker
+ *
+ * Packs particles into one interleaved vertex:
+ * x, y as unsigned 16 bit values normalized to the world size padded by POSITION_MARGIN on each side,
+ * so particles outside the world keep their place, then optionally the RGBA8 color,
+ * then optionally the weight as an unsigned 16 bit value normalized to WEIGHT_RANGE followed by
+ * 2 bytes of padding.
+ * Only depends on java.nio, so it can run on any JVM.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public final class ParticlePacker {
+    /**
+     * Byte offset of the position in a vertex.
+     */
+    public static final int POSITION_OFFSET = 0;
+
+    /**
+     * Byte offset of the color in a vertex.
+     */
+    public static final int COLOR_OFFSET = 4;
+
+    /**
+     * Size of the largest vertex, with color and weight.
+     */
+    public static final int MAX_STRIDE = 12;
+
+    /**
+     * Weights are clamped to [0, WEIGHT_RANGE] before quantization.
+     */
+    public static final float WEIGHT_RANGE = 4.f;
+
+    /**
+     * Share of the world size added on each side of the quantized position range.
+     */
+    public static final float POSITION_MARGIN = 0.5f;
+
+    private static final int FIELD_SIZE = 4;
+
+    private static final int MAX_VALUE = 0xFFFF;
+
+    private ParticlePacker() {
+    }
+
+    /**
+     * get stride
+     *
+     * @param withColor whether the color is packed
+     * @param withWeight whether the weight is packed
+     * @return vertex size in bytes
+     */
+    public static int getStride(boolean withColor, boolean withWeight) {
+        return FIELD_SIZE + (withColor ? FIELD_SIZE : 0) + (withWeight ? FIELD_SIZE : 0);
+    }
+
+    /**
+     * get weight offset
+     *
+     * @param withColor whether the color is packed
+     * @return byte offset of the weight in a vertex
+     */
+    public static int getWeightOffset(boolean withColor) {
+        return withColor ? COLOR_OFFSET + FIELD_SIZE : COLOR_OFFSET;
+    }
+
+    /**
+     * Packs particles into output from index 0.
+     *
+     * @param positions x, y pairs in world units
+     * @param colors RGBA8 colors, or null to leave them out
+     * @param weights particle weights, or null to leave them out
+     * @param count particle count
+     * @param worldWidth world width the x coordinate is normalized to
+     * @param worldHeight world height the y coordinate is normalized to
+     * @param output output buffer, at least count * getStride(colors != null, weights != null) bytes
+     */
+    public static void pack(FloatBuffer positions, ByteBuffer colors, FloatBuffer weights, int count,
+        float worldWidth, float worldHeight, ByteBuffer output) {
+        int stride = getStride(colors != null, weights != null);
+        int weightOffset = getWeightOffset(colors != null);
+        for (int i = 0; i < count; i++) {
+            int vertex = i * stride;
+            output.putShort(vertex + POSITION_OFFSET, (short) quantizePosition(positions.get(2 * i), worldWidth));
+            output.putShort(vertex + POSITION_OFFSET + 2,
+                (short) quantizePosition(positions.get(2 * i + 1), worldHeight));
+            if (colors != null) {
+                // Same byte order on both sides, so the RGBA bytes keep their order.
+                output.putInt(vertex + COLOR_OFFSET, colors.getInt(FIELD_SIZE * i));
+            }
+            if (weights != null) {
+                output.putShort(vertex + weightOffset, (short) quantize(weights.get(i), WEIGHT_RANGE));
+                output.putShort(vertex + weightOffset + 2, (short) 0);
+            }
+        }
+    }
+
+    /**
+     * Obtains the world coordinate a packed position of 0 stands for.
+     *
+     * @param worldSize world width or height
+     * @return lower bound of the packed range
+     */
+    public static float getPositionOrigin(float worldSize) {
+        return -POSITION_MARGIN * worldSize;
+    }
+
+    /**
+     * Obtains the extent of the packed position range, the vertex transform scales normalized positions by it.
+     *
+     * @param worldSize world width or height
+     * @return world units covered by [0, 0xFFFF]
+     */
+    public static float getPositionRange(float worldSize) {
+        return (1 + 2 * POSITION_MARGIN) * worldSize;
+    }
+
+    /**
+     * Quantizes a coordinate over the padded world range.
+     *
+     * @param value coordinate in world units
+     * @param worldSize world width or height
+     * @return quantized value
+     */
+    public static int quantizePosition(float value, float worldSize) {
+        return quantize(value - getPositionOrigin(worldSize), getPositionRange(worldSize));
+    }
+
+    /**
+     * Inverse of quantizePosition.
+     *
+     * @param quantized quantized value, only the low 16 bits are used
+     * @param worldSize world width or height
+     * @return coordinate in world units
+     */
+    public static float dequantizePosition(int quantized, float worldSize) {
+        return dequantize(quantized, getPositionRange(worldSize)) + getPositionOrigin(worldSize);
+    }
+
+    /**
+     * Maps [0, range] to [0, 0xFFFF], clamping values outside.
+     *
+     * @param value the value
+     * @param range upper bound
+     * @return quantized value
+     */
+    public static int quantize(float value, float range) {
+        if (range <= 0 || value <= 0) {
+            return 0;
+        }
+        if (value >= range) {
+            return MAX_VALUE;
+        }
+        return Math.round(value / range * MAX_VALUE);
+    }
+
+    /**
+     * Inverse of quantize, matching what GL does for normalized unsigned shorts.
+     *
+     * @param quantized quantized value, only the low 16 bits are used
+     * @param range upper bound
+     * @return value in [0, range]
+     */
+    public static float dequantize(int quantized, float range) {
+        return (quantized & MAX_VALUE) * range / MAX_VALUE;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: ParticleSnapshot
+ *
+ * Particle state copied out of the world after a simulation step, so that rendering
+ * does not need the world lock.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ParticleSnapshot {
+    /**
+     * Bytes per particle in the position stream.
+     */
+    public static final int POSITION_STRIDE = 2 * 4;
+
+    /**
+     * Bytes per particle in the color stream.
+     */
+    public static final int COLOR_STRIDE = 4;
+
+    /**
+     * Bytes per particle in the weight stream.
+     */
+    public static final int WEIGHT_STRIDE = 4;
+
+    /**
+     * Position stream, always captured since interpolation needs it.
+     */
+    public static final int STREAM_POSITION = 1 << 0;
+
+    /**
+     * Color stream.
+     */
+    public static final int STREAM_COLOR = 1 << 1;
+
+    /**
+     * Weight stream.
+     */
+    public static final int STREAM_WEIGHT = 1 << 2;
+
+    /**
+     * All streams.
+     */
+    public static final int STREAM_ALL = STREAM_POSITION | STREAM_COLOR | STREAM_WEIGHT;
+
+    private final byte[] positions = new byte[POSITION_STRIDE * Config.MAX_NODE_COUNT];
+    private final byte[] previousPositions = new byte[POSITION_STRIDE * Config.MAX_NODE_COUNT];
+    private final FloatBuffer positionFloats = ByteBuffer.wrap(positions).order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    private final FloatBuffer previousPositionFloats = ByteBuffer.wrap(previousPositions)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    private final byte[] colors = new byte[COLOR_STRIDE * Config.MAX_NODE_COUNT];
+    private final byte[] weights = new byte[WEIGHT_STRIDE * Config.MAX_NODE_COUNT];
+    private final FloatBuffer weightView = ByteBuffer.wrap(weights).order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    private final int[] groupOffsets = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] groupCounts = new int[Config.MAX_NODE_GROUP_COUNT];
+    private final int[] groupFlags = new int[Config.MAX_NODE_GROUP_COUNT];
+    private int particleCount = 0;
+    private int previousParticleCount = 0;
+    private int groupCount = 0;
+    private int streams = STREAM_ALL;
+    private int colorGeneration = -1;
+    private int groupGeneration = -1;
+    private long stepTime = 0;
+
+    /**
+     * Copies the positions before the last simulation step, used for interpolation.
+     * The caller must hold the world lock.
+     *
+     * @param system the particle system
+     */
+    public void capturePrevious(ParticleSystem system) {
+        if (system == null) {
+            previousParticleCount = 0;
+            return;
+        }
+        previousParticleCount = Math.min(system.getParticleCount(), Config.MAX_NODE_COUNT);
+        system.copyPositionBuffer(previousParticleCount, previousPositions);
+    }
+
+    /**
+     * Copies the particle state. The caller must hold the world lock.
+     * Colors and groups are not read here, they come from a ColorCache and a GroupTable.
+     *
+     * @param system the particle system
+     * @param requestedStreams STREAM_* mask of the streams to copy, positions are always copied
+     */
+    public void capture(ParticleSystem system, int requestedStreams) {
+        streams = requestedStreams | STREAM_POSITION;
+        if (system == null) {
+            particleCount = 0;
+            groupCount = 0;
+            groupGeneration = -1;
+            return;
+        }
+        particleCount = Math.min(system.getParticleCount(), Config.MAX_NODE_COUNT);
+        system.copyPositionBuffer(particleCount, positions);
+        if ((streams & STREAM_WEIGHT) != 0) {
+            system.copyWeightBuffer(particleCount, weights);
+        }
+    }
+
+    /**
+     * Sets the particle counts without a particle system, the positions are written through getPositions.
+     * Used by tests.
+     *
+     * @param count particles in the current step
+     * @param previousCount particles in the previous step
+     */
+    void setParticleCounts(int count, int previousCount) {
+        particleCount = Math.min(count, Config.MAX_NODE_COUNT);
+        previousParticleCount = Math.min(previousCount, Config.MAX_NODE_COUNT);
+    }
+
+    /**
+     * Takes the group ranges, copying them only if this snapshot holds an older generation.
+     *
+     * @param table group table updated for this step
+     */
+    public void setGroups(GroupTable table) {
+        if (table.getGeneration() == groupGeneration) {
+            return;
+        }
+        groupCount = table.copyTo(groupOffsets, groupCounts, groupFlags);
+        groupGeneration = table.getGeneration();
+    }
+
+    /**
+     * Takes the cached colors, copying them only if this snapshot holds an older generation.
+     *
+     * @param cache color cache updated for this step
+     */
+    public void setColors(ColorCache cache) {
+        if (cache.getGeneration() == colorGeneration) {
+            return;
+        }
+        System.arraycopy(cache.getColors(), 0, colors, 0, particleCount * COLOR_STRIDE);
+        colorGeneration = cache.getGeneration();
+    }
+
+    /**
+     * Obtains the generation of the colors, it changes whenever the colors do.
+     *
+     * @return color generation
+     */
+    public int getColorGeneration() {
+        return colorGeneration;
+    }
+
+    public byte[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Writes positions blended between the previous and the current step.
+     *
+     * @param output output buffer, at least particleCount * 2 floats from index 0
+     * @param alpha 0 for the previous step, 1 for the current step
+     */
+    public void interpolatePositions(FloatBuffer output, float alpha) {
+        int floatCount = particleCount * 2;
+        if (previousParticleCount != particleCount || alpha >= 1.f) {
+            // Particles were added or removed, indices do not match across the step.
+            for (int i = 0; i < floatCount; i++) {
+                output.put(i, positionFloats.get(i));
+            }
+            return;
+        }
+        for (int i = 0; i < floatCount; i++) {
+            float previous = previousPositionFloats.get(i);
+            output.put(i, previous + (positionFloats.get(i) - previous) * alpha);
+        }
+    }
+
+    /**
+     * Obtains the largest distance a particle moved during the last step.
+     *
+     * @return max displacement in world units, Float.MAX_VALUE if particles were added or removed
+     */
+    public float getMaxDisplacement() {
+        if (previousParticleCount != particleCount) {
+            return Float.MAX_VALUE;
+        }
+        float max = 0;
+        for (int i = 0; i < particleCount; i++) {
+            float deltaX = positionFloats.get(2 * i) - previousPositionFloats.get(2 * i);
+            float deltaY = positionFloats.get(2 * i + 1) - previousPositionFloats.get(2 * i + 1);
+            max = Math.max(max, deltaX * deltaX + deltaY * deltaY);
+        }
+        return (float) Math.sqrt(max);
+    }
+
+    /**
+     * Obtains the System.nanoTime() at which the current state is due.
+     *
+     * @return step time
+     */
+    public long getStepTime() {
+        return stepTime;
+    }
+
+    /**
+     * set step time
+     *
+     * @param time System.nanoTime() at which the current state is due
+     */
+    public void setStepTime(long time) {
+        stepTime = time;
+    }
+
+    public byte[] getColors() {
+        return colors;
+    }
+
+    public byte[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Obtains the weights as a buffer for absolute reads.
+     *
+     * @return weight view
+     */
+    public FloatBuffer getWeightView() {
+        return weightView;
+    }
+
+    /**
+     * Obtains the streams copied by the last capture.
+     *
+     * @return STREAM_* mask
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * Obtains the index of the first particle of a group.
+     *
+     * @param group group index
+     * @return particle buffer index
+     */
+    public int getGroupOffset(int group) {
+        return groupOffsets[group];
+    }
+
+    /**
+     * Obtains the number of particles in a group.
+     *
+     * @param group group index
+     * @return particle count
+     */
+    public int getGroupParticleCount(int group) {
+        return groupCounts[group];
+    }
+
+    /**
+     * Obtains the flags of a group.
+     *
+     * @param group group index
+     * @return group flags
+     */
+    public int getGroupFlags(int group) {
+        return groupFlags[group];
+    }
+}
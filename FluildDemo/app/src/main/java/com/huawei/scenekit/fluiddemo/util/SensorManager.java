@@ -22,7 +22,6 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.view.Surface;
 
-import com.huawei.hms.scene.sdk.fluid.World;
 import com.huawei.scenekit.fluiddemo.render.Render;
 
 /**
@@ -73,13 +72,8 @@ public class SensorManager implements SensorEventListener {
                     break;
             }
 
-            // Set the gravity.
-            World world = Render.getInstance().getManager().acquire();
-            try {
-                world.setGravity(gravityX, gravityY);
-            } finally {
-                Render.getInstance().getManager().release();
-            }
+            // Set the gravity, a large change wakes a fluid at rest.
+            Render.getInstance().setGravity(gravityX, gravityY);
         }
     }
 
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
+import com.huawei.hms.scene.sdk.fluid.World;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Description: SimulationThread
+ *
+ * Steps the world off the GL thread and publishes particle snapshots for rendering.
+ * Real time is accumulated and consumed in fixed Config.TIME_INTERVAL steps, at most
+ * Config.MAX_SUB_STEPS per iteration, so the simulation speed does not depend on the display rate.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class SimulationThread extends Thread {
+    /**
+     * Notified on the simulation thread when the fluid comes to rest.
+     */
+    public interface IdleListener {
+        /**
+         * The fluid came to rest, stepping is suspended until wake is called.
+         */
+        void onIdle();
+    }
+
+    /**
+     * Nanoseconds per second.
+     */
+    public static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Simulation step in nanoseconds.
+     */
+    public static final long STEP_NANOS = (long) (Config.TIME_INTERVAL * NANOS_PER_SECOND);
+
+    /**
+     * Solver iterations left to the SDK: the world is stepped with singleStep, as before quality tiers.
+     */
+    public static final int SDK_ITERATIONS = 0;
+
+    private final WorldManager worldManager;
+    private final TripleBuffer<ParticleSnapshot> snapshots;
+    private final ColorCache colorCache = new ColorCache();
+    private final GroupTable groupTable = new GroupTable();
+    private final IdleDetector idleDetector = new IdleDetector();
+    private final Object stateLock = new Object();
+    private boolean active = false;
+    private boolean quit = false;
+    private volatile IdleListener idleListener = null;
+    private volatile int streams = ParticleSnapshot.STREAM_ALL;
+    // Velocity, position and particle iterations, replaced as a whole.
+    private volatile int[] iterations = {SDK_ITERATIONS, SDK_ITERATIONS, SDK_ITERATIONS};
+    private volatile int particleBudget = Config.MAX_NODE_COUNT;
+    private volatile long stepNanos = 0;
+
+    public SimulationThread(WorldManager worldManager) {
+        super("FluidSimulation");
+        setDaemon(true);
+        this.worldManager = worldManager;
+        snapshots = new TripleBuffer<>(new ParticleSnapshot(), new ParticleSnapshot(), new ParticleSnapshot());
+    }
+
+    /**
+     * Obtains the snapshot exchange read by the renderer.
+     *
+     * @return snapshots
+     */
+    public TripleBuffer<ParticleSnapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Select the particle streams copied into snapshots.
+     *
+     * @param streamMask ParticleSnapshot.STREAM_* mask
+     */
+    public void setStreams(int streamMask) {
+        streams = streamMask;
+    }
+
+    /**
+     * Set the solver iterations, applied from the next step. SDK_ITERATIONS for all three keeps the
+     * SDK's own.
+     *
+     * @param velocity velocity iterations
+     * @param position position iterations
+     * @param particle particle iterations
+     */
+    public void setSolverIterations(int velocity, int position, int particle) {
+        iterations = new int[] {velocity, position, particle};
+    }
+
+    /**
+     * Set the max particle count new water may bring the world to. Water already in the world is kept,
+     * deleting what the user added would be permanent while a tier can come back a second later.
+     *
+     * @param budget max particle count
+     */
+    public void setParticleBudget(int budget) {
+        particleBudget = budget;
+    }
+
+    public int getParticleBudget() {
+        return particleBudget;
+    }
+
+    /**
+     * Obtains the cost of one step, measured over the latest iteration.
+     *
+     * @return nanoseconds per step
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public void setIdleListener(IdleListener listener) {
+        idleListener = listener;
+    }
+
+    public IdleDetector getIdleDetector() {
+        return idleDetector;
+    }
+
+    /**
+     * Resume stepping after the fluid came to rest.
+     */
+    public void wake() {
+        synchronized (stateLock) {
+            idleDetector.wake();
+            stateLock.notifyAll();
+        }
+    }
+
+    /**
+     * Start or stop stepping the world.
+     *
+     * @param isActive whether to step
+     */
+    public void setActive(boolean isActive) {
+        synchronized (stateLock) {
+            active = isActive;
+            stateLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stop the thread.
+     */
+    public void quit() {
+        synchronized (stateLock) {
+            quit = true;
+            stateLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        long accumulator = 0;
+        long lastTime = System.nanoTime();
+        while (true) {
+            if (!isActive()) {
+                if (!waitUntilActive()) {
+                    return;
+                }
+                // Time spent paused is not simulated.
+                accumulator = 0;
+                lastTime = System.nanoTime();
+            }
+
+            long now = System.nanoTime();
+            accumulator += now - lastTime;
+            lastTime = now;
+
+            int steps = (int) Math.min(accumulator / STEP_NANOS, Config.MAX_SUB_STEPS);
+            if (steps > 0) {
+                // Too far behind: drop the backlog and run slower instead of spiralling.
+                accumulator = Math.min(accumulator - steps * STEP_NANOS, STEP_NANOS - 1);
+                step(steps, now - accumulator);
+            }
+            LockSupport.parkNanos(STEP_NANOS - accumulator);
+        }
+    }
+
+    private boolean isActive() {
+        synchronized (stateLock) {
+            return active && !quit && !idleDetector.isIdle();
+        }
+    }
+
+    // Block while paused. Returns false once the thread should exit.
+    private boolean waitUntilActive() {
+        synchronized (stateLock) {
+            while ((!active || idleDetector.isIdle()) && !quit) {
+                try {
+                    stateLock.wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return !quit;
+        }
+    }
+
+    private void step(int steps, long stepTime) {
+        float displacement;
+        World world = worldManager.acquire();
+        try {
+            if (world == null) {
+                return;
+            }
+            ParticleSnapshot snapshot = snapshots.getBack();
+            ParticleSystem system = worldManager.getParticleSystem();
+            int[] solver = iterations;
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                if (i == steps - 1) {
+                    snapshot.capturePrevious(system);
+                }
+                if (solver[0] == SDK_ITERATIONS) {
+                    world.singleStep(Config.TIME_INTERVAL);
+                } else {
+                    world.step(Config.TIME_INTERVAL, solver[0], solver[1], solver[2]);
+                }
+            }
+            stepNanos = (System.nanoTime() - start) / steps;
+            int requestedStreams = streams;
+            snapshot.capture(system, requestedStreams);
+            if (system != null) {
+                groupTable.update(system, snapshot.getParticleCount(), worldManager.getGroupGeneration());
+                snapshot.setGroups(groupTable);
+            }
+            if (system != null && (requestedStreams & ParticleSnapshot.STREAM_COLOR) != 0) {
+                colorCache.update(system, snapshot.getParticleCount(), worldManager.getGroupGeneration(),
+                    worldManager.hasColorMixing());
+                snapshot.setColors(colorCache);
+            }
+            snapshot.setStepTime(stepTime);
+            displacement = snapshot.getMaxDisplacement();
+        } finally {
+            worldManager.release();
+        }
+        snapshots.publish();
+
+        IdleListener listener = idleListener;
+        if (idleDetector.onStep(displacement) && listener != null) {
+            listener.onIdle();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+/**
+ * Description: TripleBuffer
+ *
+ * One producer writes into the back slot while one consumer reads the front slot.
+ * Publishing and acquiring only swap references, so neither side waits for the other's work.
+ *
+ * @param <T> slot type
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class TripleBuffer<T> {
+    private final Object swapLock = new Object();
+    private T back;
+    private T pending;
+    private T front;
+    private boolean fresh = false;
+
+    public TripleBuffer(T back, T pending, T front) {
+        this.back = back;
+        this.pending = pending;
+        this.front = front;
+    }
+
+    /**
+     * Obtains the slot the producer may write. Producer thread only.
+     *
+     * @return back slot
+     */
+    public T getBack() {
+        return back;
+    }
+
+    /**
+     * Hands the back slot over to the consumer.
+     */
+    public void publish() {
+        synchronized (swapLock) {
+            T slot = pending;
+            pending = back;
+            back = slot;
+            fresh = true;
+        }
+    }
+
+    /**
+     * Obtains the most recently published slot. Consumer thread only. The slot stays
+     * valid until the next call.
+     *
+     * @return front slot
+     */
+    public T acquire() {
+        synchronized (swapLock) {
+            if (fresh) {
+                T slot = front;
+                front = pending;
+                pending = slot;
+                fresh = false;
+            }
+            return front;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.huawei.hms.scene.sdk.fluid.ParticleSystem;
 import com.huawei.hms.scene.sdk.fluid.SceneKitFluid;
 import com.huawei.hms.scene.sdk.fluid.World;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -36,6 +37,8 @@ public class WorldManager {
     private Lock lock = new ReentrantLock();
     private World world = null;
     private ParticleSystem particleSystem = null;
+    private final AtomicInteger groupGeneration = new AtomicInteger();
+    private volatile boolean colorMixing = false;
 
     public WorldManager() {
     }
@@ -80,6 +83,43 @@ public class WorldManager {
         return particleSystem;
     }
 
+    /**
+     * Record that particle groups were added or deleted, so cached particle data is read again.
+     */
+    public void notifyGroupsChanged() {
+        groupGeneration.incrementAndGet();
+    }
+
+    /**
+     * Record that a particle group was added, so cached particle data is read again.
+     *
+     * @param isColorMixing whether the group has the MIX_COLOR flag, whose colors change while stepping
+     */
+    public void notifyGroupAdded(boolean isColorMixing) {
+        if (isColorMixing) {
+            colorMixing = true;
+        }
+        notifyGroupsChanged();
+    }
+
+    /**
+     * Whether the world holds MIX_COLOR particles, so colors may change on any step.
+     *
+     * @return true once a mixing group was added to the current world
+     */
+    public boolean hasColorMixing() {
+        return colorMixing;
+    }
+
+    /**
+     * Obtains a counter that changes whenever particle groups are added or deleted.
+     *
+     * @return group generation
+     */
+    public int getGroupGeneration() {
+        return groupGeneration.get();
+    }
+
     /**
      * Delete the world.
      */
@@ -88,6 +128,8 @@ public class WorldManager {
             SceneKitFluid.getInstance().destroyWorld(world);
             world = null;
             particleSystem = null;
+            colorMixing = false;
+            notifyGroupsChanged();
         }
     }
 }
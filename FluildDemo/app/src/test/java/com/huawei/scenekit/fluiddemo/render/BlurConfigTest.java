@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Description: BlurConfigTest
+ *
+ * The linear taps must reproduce the one tap per texel kernel when they step one texel of the sampled texture.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class BlurConfigTest {
+    private static final float EPSILON = 1e-6f;
+
+    // Weights of the original Blur.frag, sigma 2.3 over 5 taps.
+    private static final float[] ORIGINAL_WEIGHTS = {0.23805f, 0.216901f, 0.164074f};
+
+    @Test
+    public void highMatchesOriginalKernel() {
+        BlurConfig high = BlurConfig.HIGH;
+        assertEquals(ORIGINAL_WEIGHTS.length, high.getPointTapCount());
+        for (int i = 0; i < ORIGINAL_WEIGHTS.length; i++) {
+            assertEquals(ORIGINAL_WEIGHTS[i], high.getPointWeights()[i], 1e-3f);
+            assertEquals(i, high.getPointOffsets()[i], 0);
+        }
+    }
+
+    @Test
+    public void linearTapsMatchPointTaps() {
+        for (int radius = 1; radius < BlurConfig.MAX_TAPS; radius++) {
+            BlurConfig config = new BlurConfig(BlurConfig.GAUSSIAN, radius, radius / 2.f + 1, true, 1);
+            // Sample a 1D signal f(x) = x^2 at the origin's neighbours through both kernels.
+            assertEquals("radius " + radius, convolvePoint(config), convolveLinear(config), 1e-4f);
+            assertEquals(1.f, sumWeights(config.getWeights(), config.getTapCount()), EPSILON);
+            assertEquals(1.f, sumWeights(config.getPointWeights(), config.getPointTapCount()), EPSILON);
+        }
+    }
+
+    private static float sumWeights(float[] weights, int tapCount) {
+        float sum = weights[0];
+        for (int i = 1; i < tapCount; i++) {
+            sum += 2 * weights[i];
+        }
+        return sum;
+    }
+
+    private static float convolvePoint(BlurConfig config) {
+        float sum = 0;
+        for (int i = 0; i < config.getPointTapCount(); i++) {
+            float offset = config.getPointOffsets()[i];
+            float value = sample(offset) + (i == 0 ? 0 : sample(-offset));
+            sum += value * config.getPointWeights()[i];
+        }
+        return sum;
+    }
+
+    private static float convolveLinear(BlurConfig config) {
+        float sum = 0;
+        for (int i = 0; i < config.getTapCount(); i++) {
+            float offset = config.getOffsets()[i];
+            float value = sample(offset) + (i == 0 ? 0 : sample(-offset));
+            sum += value * config.getWeights()[i];
+        }
+        return sum;
+    }
+
+    // Texel i holds i * i, read with a linear filter like the GPU does.
+    private static float sample(float position) {
+        int left = (int) Math.floor(position);
+        float fraction = position - left;
+        return (1 - fraction) * left * left + fraction * (left + 1) * (left + 1);
+    }
+}
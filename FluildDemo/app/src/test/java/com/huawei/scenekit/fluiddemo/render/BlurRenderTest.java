@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import static org.junit.Assert.assertEquals;
+
+import com.huawei.scenekit.fluiddemo.util.Config;
+
+import org.junit.Test;
+
+/**
+ * Description: BlurRenderTest
+ *
+ * Dual filter offsets stay at half a texel, larger surfaces get more levels instead.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class BlurRenderTest {
+    @Test
+    public void referenceSizeKeepsTheConfiguredLevels() {
+        assertEquals(2, BlurRender.getLevelCount(2, Config.BLUR_REFERENCE_SIZE));
+    }
+
+    @Test
+    public void everyDoublingAddsALevel() {
+        assertEquals(3, BlurRender.getLevelCount(2, Config.BLUR_REFERENCE_SIZE * 2));
+        assertEquals(4, BlurRender.getLevelCount(2, Config.BLUR_REFERENCE_SIZE * 4));
+        // 1080 x 2400 at half resolution.
+        assertEquals(4, BlurRender.getLevelCount(2, 1200));
+    }
+
+    @Test
+    public void levelsStayInRange() {
+        assertEquals(1, BlurRender.getLevelCount(1, Config.BLUR_REFERENCE_SIZE / 4));
+        assertEquals(BlurConfig.MAX_LEVELS + 3, BlurRender.getLevelCount(BlurConfig.MAX_LEVELS, 1 << 16));
+    }
+}
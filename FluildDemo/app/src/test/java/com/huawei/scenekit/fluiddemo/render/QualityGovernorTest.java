@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Description: QualityGovernorTest
+ *
+ * Tier hysteresis: quick drops, slow raises, a raise wait that doubles on every drop, gaps ignored.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class QualityGovernorTest {
+    private static final long TARGET_NANOS = 16666667L;
+    private static final int WINDOW_FRAMES = 30;
+    private static final int UPGRADE_WINDOWS = 10;
+    private static final int MAX_UPGRADE_WINDOWS = 80;
+    private static final int HIGH = 2;
+    private static final int MEDIUM = 1;
+    private static final int LOW = 0;
+    private static final long NO_TIMER = -1;
+
+    private static final long LATE_FRAME = TARGET_NANOS * 2;
+    private static final long BUSY_CPU = TARGET_NANOS;
+    private static final long IDLE_CPU = TARGET_NANOS / 4;
+
+    @Test
+    public void dropsAfterTwoWindowsOverBudget() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        assertFalse(window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU));
+        assertEquals(HIGH, governor.getTierIndex());
+        assertTrue(window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU));
+        assertEquals(MEDIUM, governor.getTierIndex());
+    }
+
+    @Test
+    public void oneSlowWindowResetsTheCount() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU);
+        window(governor, TARGET_NANOS, IDLE_CPU, IDLE_CPU);
+        window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU);
+        assertEquals(HIGH, governor.getTierIndex());
+    }
+
+    @Test
+    public void gpuOverBudgetDrops() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        windows(governor, 2, TARGET_NANOS, IDLE_CPU, BUSY_CPU);
+        assertEquals(MEDIUM, governor.getTierIndex());
+    }
+
+    @Test
+    public void raisesOnlyAfterALongRunWithHeadroom() {
+        QualityGovernor governor = new QualityGovernor(MEDIUM, TARGET_NANOS);
+        assertEquals(UPGRADE_WINDOWS - 1, windows(governor, UPGRADE_WINDOWS - 1, TARGET_NANOS, IDLE_CPU, IDLE_CPU));
+        assertEquals(MEDIUM, governor.getTierIndex());
+        assertTrue(window(governor, TARGET_NANOS, IDLE_CPU, IDLE_CPU));
+        assertEquals(HIGH, governor.getTierIndex());
+    }
+
+    @Test
+    public void everyDropDoublesTheRaiseWait() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        int wait = UPGRADE_WINDOWS;
+        for (int drop = 0; drop < 5; drop++) {
+            windows(governor, 2, LATE_FRAME, IDLE_CPU, NO_TIMER);
+            assertEquals(MEDIUM, governor.getTierIndex());
+            wait = Math.min(wait * 2, MAX_UPGRADE_WINDOWS);
+            assertEquals(wait - 1, windows(governor, wait - 1, TARGET_NANOS, IDLE_CPU, IDLE_CPU));
+            assertTrue("raise after " + wait + " windows", window(governor, TARGET_NANOS, IDLE_CPU, IDLE_CPU));
+            assertEquals(HIGH, governor.getTierIndex());
+        }
+    }
+
+    @Test
+    public void staysWithinTheTiers() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        for (int i = 0; i < 20; i++) {
+            window(governor, LATE_FRAME, BUSY_CPU, BUSY_CPU);
+        }
+        assertEquals(LOW, governor.getTierIndex());
+        for (int i = 0; i < 1000; i++) {
+            window(governor, TARGET_NANOS, IDLE_CPU, IDLE_CPU);
+        }
+        assertEquals(HIGH, governor.getTierIndex());
+    }
+
+    @Test
+    public void gapsAreIgnored() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        // Rendering paused at rest: 5 targets between frames, over budget if they counted.
+        windows(governor, 10, TARGET_NANOS * 5, BUSY_CPU, BUSY_CPU);
+        assertEquals(HIGH, governor.getTierIndex());
+        // Gaps do not complete windows either: one window over budget before them, one after.
+        window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU);
+        windows(governor, 10, TARGET_NANOS * 5, IDLE_CPU, IDLE_CPU);
+        assertEquals(HIGH, governor.getTierIndex());
+        assertTrue(window(governor, TARGET_NANOS, BUSY_CPU, IDLE_CPU));
+        assertEquals(MEDIUM, governor.getTierIndex());
+    }
+
+    @Test
+    public void withoutTimerFrameTimesDecide() {
+        QualityGovernor governor = new QualityGovernor(HIGH, TARGET_NANOS);
+        windows(governor, 2, LATE_FRAME, IDLE_CPU, NO_TIMER);
+        assertEquals(MEDIUM, governor.getTierIndex());
+
+        // On time with an idle CPU is headroom, once the doubled wait has passed.
+        windows(governor, UPGRADE_WINDOWS * 2, TARGET_NANOS, IDLE_CPU, NO_TIMER);
+        assertEquals(HIGH, governor.getTierIndex());
+    }
+
+    // Frames of one evaluation window, true if the tier changed at its end.
+    private static boolean window(QualityGovernor governor, long frameNanos, long cpuNanos, long gpuNanos) {
+        boolean isChanged = false;
+        for (int i = 0; i < WINDOW_FRAMES; i++) {
+            isChanged |= governor.onFrame(frameNanos, cpuNanos, gpuNanos);
+        }
+        return isChanged;
+    }
+
+    // Runs windows until the tier changes, returns the number of windows run.
+    private static int windows(QualityGovernor governor, int count, long frameNanos, long cpuNanos, long gpuNanos) {
+        for (int i = 0; i < count; i++) {
+            if (window(governor, frameNanos, cpuNanos, gpuNanos)) {
+                return i + 1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Description: ResolutionControllerTest
+ *
+ * The scale follows the measured frame cost, whatever the vsync interval the frames are presented at.
+ * Without a GPU timer it only drops, on frames that miss their vsync.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ResolutionControllerTest {
+    private static final long TARGET_NANOS = 16666667L;
+    private static final float MIN_SCALE = 0.125f;
+    private static final float MAX_SCALE = 0.5f;
+    private static final int FRAMES = 1000;
+    private static final long DRAW_NANOS = 1000000L;
+    private static final long NO_TIMER = -1;
+
+    @Test
+    public void cheapFramesRaiseTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        // Presented at 60 Hz, but only a third of the budget is spent.
+        run(controller, TARGET_NANOS / 3);
+        assertEquals(MAX_SCALE, controller.getScale(), 0);
+    }
+
+    @Test
+    public void expensiveFramesLowerTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        run(controller, TARGET_NANOS);
+        assertEquals(MIN_SCALE, controller.getScale(), 0);
+    }
+
+    @Test
+    public void costNearTheBudgetHoldsTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        run(controller, TARGET_NANOS * 3 / 4);
+        assertEquals(0.25f, controller.getScale(), 0);
+    }
+
+    @Test
+    public void spikesAndGapsAreIgnored() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        run(controller, TARGET_NANOS * 10);
+        // Rendering paused at rest.
+        for (int i = 0; i < FRAMES; i++) {
+            controller.onFrame(TARGET_NANOS * 10, DRAW_NANOS, TARGET_NANOS);
+        }
+        assertEquals(0.25f, controller.getScale(), 0);
+    }
+
+    @Test
+    public void withoutTimerCheapDrawsDoNotRaiseTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        // GPU bound but on time: the submit time alone says nothing about the GPU.
+        for (int i = 0; i < FRAMES; i++) {
+            controller.onFrame(TARGET_NANOS, DRAW_NANOS, NO_TIMER);
+        }
+        assertEquals(0.25f, controller.getScale(), 0);
+    }
+
+    @Test
+    public void withoutTimerMissedFramesLowerTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        // 30 fps on a 60 Hz display while the CPU submits in a millisecond.
+        for (int i = 0; i < FRAMES; i++) {
+            controller.onFrame(TARGET_NANOS * 2, DRAW_NANOS, NO_TIMER);
+        }
+        assertEquals(MIN_SCALE, controller.getScale(), 0);
+    }
+
+    @Test
+    public void disabledControllerKeepsTheScale() {
+        ResolutionController controller = new ResolutionController(0.25f, MIN_SCALE, MAX_SCALE, TARGET_NANOS);
+        controller.setEnabled(false);
+        assertFalse(controller.onFrame(TARGET_NANOS, DRAW_NANOS, TARGET_NANOS / 10));
+        run(controller, TARGET_NANOS / 10);
+        assertEquals(0.25f, controller.getScale(), 0);
+    }
+
+    // Frames presented at 60 Hz with a GPU timer.
+    private static void run(ResolutionController controller, long gpuNanos) {
+        for (int i = 0; i < FRAMES; i++) {
+            controller.onFrame(TARGET_NANOS, DRAW_NANOS, gpuNanos);
+        }
+    }
+}
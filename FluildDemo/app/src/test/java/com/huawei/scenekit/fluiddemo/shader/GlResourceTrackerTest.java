@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description: GlResourceTrackerTest
+ *
+ * Runs the tracker against a fake binding that records the deletes instead of calling GL.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class GlResourceTrackerTest {
+    private final List<String> deleted = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        GlResourceTracker.forgetAll();
+        GlResourceTracker.setBinding((type, id) -> deleted.add(type + " " + id));
+    }
+
+    @After
+    public void tearDown() {
+        GlResourceTracker.forgetAll();
+        GlResourceTracker.setBinding(GlResourceTracker.GLES_BINDING);
+    }
+
+    @Test
+    public void releaseDeletesOnce() {
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, 3, 1024, "canvas");
+        GlResourceTracker.release(GlResourceTracker.Type.TEXTURE, 3);
+        GlResourceTracker.release(GlResourceTracker.Type.TEXTURE, 3);
+        assertEquals(1, deleted.size());
+        assertEquals("TEXTURE 3", deleted.get(0));
+        assertEquals(0, GlResourceTracker.getCount());
+    }
+
+    @Test
+    public void untrackedObjectsAreNotDeleted() {
+        GlResourceTracker.register(GlResourceTracker.Type.BUFFER, 0, 64, "never created");
+        GlResourceTracker.release(GlResourceTracker.Type.BUFFER, 0);
+        GlResourceTracker.release(GlResourceTracker.Type.PROGRAM, 7);
+        assertEquals(0, GlResourceTracker.getCount());
+        assertTrue(deleted.isEmpty());
+    }
+
+    @Test
+    public void bytesFollowTheObjects() {
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, 1, 0, "render target");
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, 2, 300, "canvas");
+        GlResourceTracker.register(GlResourceTracker.Type.BUFFER, 1, 200, "particles");
+        GlResourceTracker.setBytes(GlResourceTracker.Type.TEXTURE, 1, 100);
+        assertEquals(400, GlResourceTracker.getBytes(GlResourceTracker.Type.TEXTURE));
+        assertEquals(600, GlResourceTracker.getTotalBytes());
+
+        GlResourceTracker.release(GlResourceTracker.Type.TEXTURE, 2);
+        assertEquals(100, GlResourceTracker.getBytes(GlResourceTracker.Type.TEXTURE));
+        assertEquals(300, GlResourceTracker.getTotalBytes());
+    }
+
+    @Test
+    public void leakReportListsWhatIsLeft() {
+        GlResourceTracker.register(GlResourceTracker.Type.FRAMEBUFFER, 4, 0, "blur");
+        GlResourceTracker.register(GlResourceTracker.Type.QUERY, 5, 0, "gpu timer");
+        GlResourceTracker.release(GlResourceTracker.Type.QUERY, 5);
+
+        List<String> report = GlResourceTracker.getLeakReport();
+        assertEquals(1, report.size());
+        assertEquals("FRAMEBUFFER 4 (blur), 0 bytes", report.get(0));
+    }
+
+    @Test
+    public void releaseAllDeletesEverything() {
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, 1, 16, "a");
+        GlResourceTracker.register(GlResourceTracker.Type.PROGRAM, 2, 0, "b");
+        GlResourceTracker.register(GlResourceTracker.Type.VERTEX_ARRAY, 3, 0, "c");
+        GlResourceTracker.releaseAll();
+        assertEquals(3, deleted.size());
+        assertEquals(0, GlResourceTracker.getCount());
+        assertTrue(GlResourceTracker.getLeakReport().isEmpty());
+    }
+
+    @Test
+    public void forgetAllDeletesNothing() {
+        GlResourceTracker.register(GlResourceTracker.Type.TEXTURE, 1, 16, "lost context");
+        GlResourceTracker.register(GlResourceTracker.Type.BUFFER, 1, 16, "lost context");
+        assertEquals(2, GlResourceTracker.forgetAll());
+        assertEquals(0, GlResourceTracker.getCount());
+        assertTrue(deleted.isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.shader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Description: MaterialHandleTest
+ *
+ * Setting a uniform by name looks it up in the program on every call, setting it through a handle
+ * resolved once must not look anything up nor allocate. GL calls are no-ops on the JVM.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class MaterialHandleTest {
+    private static final String[] NAMES = {"mvp", "pointSize", "alphaThreshold", "blurStep", "halfTexel",
+        "uvTransform", "alphaFactor", "texture"};
+    private static final int WARMUP_CALLS = 10000;
+    private static final int CALLS = 100000;
+    private static final long SLACK_BYTES = 1024;
+
+    // Program whose uniform lookups are counted, wrapping no GL object.
+    private static class CountingProgram extends Program {
+        private final Map<String, Integer> locations = new HashMap<>();
+        private int lookups = 0;
+
+        CountingProgram() {
+            super(1);
+            for (int i = 0; i < NAMES.length; i++) {
+                locations.put(NAMES[i], i);
+            }
+        }
+
+        @Override
+        public int getUniformLocation(String name) {
+            lookups++;
+            Integer location = locations.get(name);
+            return location == null ? -1 : location;
+        }
+    }
+
+    private final CountingProgram program = new CountingProgram();
+    private final Material material = new Material(program);
+    private final int[] handles = new int[NAMES.length];
+
+    public MaterialHandleTest() {
+        for (int i = 0; i < NAMES.length; i++) {
+            handles[i] = material.getUniformHandle(NAMES[i]);
+        }
+    }
+
+    @Test
+    public void handlesMatchNames() {
+        for (int i = 0; i < NAMES.length; i++) {
+            assertEquals(material.getUniformLocation(NAMES[i]), handles[i]);
+        }
+        assertEquals(Material.INVALID_HANDLE, material.getUniformHandle("missing"));
+    }
+
+    @Test
+    public void namesAreLookedUpOnEveryCall() {
+        int before = program.lookups;
+        for (int i = 0; i < CALLS; i++) {
+            material.updateUniform(NAMES[i % NAMES.length], 1.f);
+        }
+        assertEquals(CALLS, program.lookups - before);
+    }
+
+    @Test
+    public void handlesNeitherLookUpNorAllocate() {
+        float[] vector = {1.f, 2.f};
+        float[] matrix = new float[16];
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            setByHandle(i, vector, matrix);
+        }
+        int lookups = program.lookups;
+        long overhead = allocatedBytes();
+        long before = allocatedBytes();
+        overhead = before - overhead;
+        for (int i = 0; i < CALLS; i++) {
+            setByHandle(i, vector, matrix);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+        assertEquals(lookups, program.lookups);
+        if (before >= 0) {
+            assertTrue(allocated + " bytes allocated in " + CALLS + " calls", allocated <= SLACK_BYTES);
+        }
+    }
+
+    private void setByHandle(int call, float[] vector, float[] matrix) {
+        int handle = handles[call % handles.length];
+        material.updateUniform(handle, 1.f);
+        material.updateUniform(handle, vector);
+        material.updateUniform(handle, matrix);
+        material.updateUniformInt(handle, call);
+        material.updateUniformTexture(handle, 0, 1);
+    }
+
+    // Bytes allocated by this thread so far, -1 if the JVM cannot tell.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        return threads.isThreadAllocatedMemorySupported()
+            ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: ParticlePackerTest
+ *
+ * Quantization error of the packed particle format.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ParticlePackerTest {
+    private static final float WORLD_WIDTH = 10.f;
+    private static final float WORLD_HEIGHT = 21.f;
+    private static final int SAMPLES = 100000;
+    private static final int MAX_VALUE = 0xFFFF;
+
+    @Test
+    public void quantizeRoundTripWithinHalfStep() {
+        float range = ParticlePacker.WEIGHT_RANGE;
+        float bound = getBound(range);
+        for (int i = 0; i <= SAMPLES; i++) {
+            float value = range * i / SAMPLES;
+            float error = Math.abs(ParticlePacker.dequantize(ParticlePacker.quantize(value, range), range) - value);
+            assertTrue(value + " off by " + error, error <= bound);
+        }
+    }
+
+    @Test
+    public void quantizeClampsOutsideRange() {
+        assertEquals(0, ParticlePacker.quantize(-1.f, 1.f));
+        assertEquals(MAX_VALUE, ParticlePacker.quantize(2.f, 1.f));
+    }
+
+    @Test
+    public void positionRoundTripCoversMargin() {
+        float origin = ParticlePacker.getPositionOrigin(WORLD_HEIGHT);
+        float range = ParticlePacker.getPositionRange(WORLD_HEIGHT);
+        float bound = getBound(range);
+        for (int i = 0; i <= SAMPLES; i++) {
+            float value = origin + range * i / SAMPLES;
+            int quantized = ParticlePacker.quantizePosition(value, WORLD_HEIGHT);
+            float error = Math.abs(ParticlePacker.dequantizePosition(quantized, WORLD_HEIGHT) - value);
+            assertTrue(value + " off by " + error, error <= bound);
+        }
+    }
+
+    @Test
+    public void packKeepsParticlesOutsideTheWorld() {
+        // Spawned left of and above the world, as Render.addWater does.
+        float[] coordinates = {-0.6f, WORLD_HEIGHT + 0.6f, WORLD_WIDTH / 2, WORLD_HEIGHT / 2};
+        int count = coordinates.length / 2;
+        FloatBuffer positions = FloatBuffer.wrap(coordinates);
+        FloatBuffer weights = FloatBuffer.wrap(new float[] {0.5f, 5.f});
+        ByteBuffer output = ByteBuffer.allocate(count * ParticlePacker.MAX_STRIDE).order(ByteOrder.nativeOrder());
+        ParticlePacker.pack(positions, null, weights, count, WORLD_WIDTH, WORLD_HEIGHT, output);
+
+        int stride = ParticlePacker.getStride(false, true);
+        int weightOffset = ParticlePacker.getWeightOffset(false);
+        float bound = getBound(ParticlePacker.getPositionRange(WORLD_HEIGHT));
+        for (int i = 0; i < count; i++) {
+            int vertex = i * stride + ParticlePacker.POSITION_OFFSET;
+            float x = ParticlePacker.dequantizePosition(output.getShort(vertex), WORLD_WIDTH);
+            float y = ParticlePacker.dequantizePosition(output.getShort(vertex + 2), WORLD_HEIGHT);
+            assertEquals(coordinates[2 * i], x, bound);
+            assertEquals(coordinates[2 * i + 1], y, bound);
+        }
+        float weight = ParticlePacker.dequantize(output.getShort(stride + weightOffset), ParticlePacker.WEIGHT_RANGE);
+        assertEquals("weights are clamped", ParticlePacker.WEIGHT_RANGE, weight, 0);
+    }
+
+    // Half a quantization step, plus a few float roundings at the magnitude of the range.
+    private static float getBound(float range) {
+        return range / MAX_VALUE / 2 + 4 * Math.ulp(range);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Huawei Technologies Co., Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.huawei.scenekit.fluiddemo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.scenekit.fluiddemo.render.ParticleUploader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Description: ParticleSnapshotTest
+ *
+ * The per frame particle path, interpolation and upload into the staging buffers, must not allocate.
+ *
+ * @author HUAWEI
+ * @since 2021-06-29
+ */
+public class ParticleSnapshotTest {
+    private static final int PARTICLES = 1000;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int FRAMES = 1000;
+    // Covers the bookkeeping of the allocation counter itself, far below one object per frame.
+    private static final long SLACK_BYTES = 1024;
+
+    private ParticleSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        snapshot = new ParticleSnapshot();
+        FloatBuffer positions = ByteBuffer.wrap(snapshot.getPositions()).order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+        for (int i = 0; i < PARTICLES; i++) {
+            positions.put(2 * i, i % 10);
+            positions.put(2 * i + 1, i / 100.f);
+        }
+        snapshot.setParticleCounts(PARTICLES, PARTICLES);
+    }
+
+    @Test
+    public void interpolatePositionsBlendsSteps() {
+        FloatBuffer output = ByteBuffer.allocateDirect(PARTICLES * ParticleSnapshot.POSITION_STRIDE)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        // The previous step is all zero.
+        snapshot.interpolatePositions(output, 0.5f);
+        assertEquals(4.5f, output.get(2 * 9), 1e-6f);
+        assertEquals(0.5f * 9.99f, output.get(2 * 999 + 1), 1e-5f);
+
+        snapshot.setParticleCounts(PARTICLES, PARTICLES - 1);
+        snapshot.interpolatePositions(output, 0.5f);
+        assertEquals("counts differ, current step expected", 9.f, output.get(2 * 9), 0);
+    }
+
+    @Test
+    public void interpolateDoesNotAllocate() {
+        FloatBuffer output = ByteBuffer.allocateDirect(PARTICLES * ParticleSnapshot.POSITION_STRIDE)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        byte[] positions = snapshot.getPositions();
+        FloatBuffer weights = snapshot.getWeightView();
+        Runnable frame = () -> snapshot.interpolatePositions(output, 0.25f);
+        assertNoAllocation(frame);
+        assertSame(positions, snapshot.getPositions());
+        assertSame(weights, snapshot.getWeightView());
+    }
+
+    @Test
+    public void uploadDoesNotAllocate() {
+        for (boolean isPacked : new boolean[] {false, true}) {
+            ParticleUploader uploader = new ParticleUploader(isPacked);
+            uploader.setStreams(ParticleSnapshot.STREAM_ALL);
+            Runnable frame = () -> uploader.upload(snapshot, 0.5f);
+            assertNoAllocation(frame);
+            assertEquals(PARTICLES, uploader.getParticleCount());
+        }
+    }
+
+    private static void assertNoAllocation(Runnable frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+        long overhead = allocatedBytes();
+        long before = allocatedBytes();
+        overhead = before - overhead;
+        for (int i = 0; i < FRAMES; i++) {
+            frame.run();
+        }
+        long allocated = allocatedBytes() - before - overhead;
+        if (before >= 0) {
+            assertTrue(allocated + " bytes allocated in " + FRAMES + " frames", allocated <= SLACK_BYTES);
+        }
+    }
+
+    // Bytes allocated by this thread so far, -1 if the JVM cannot tell.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        return threads.isThreadAllocatedMemorySupported()
+            ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+}